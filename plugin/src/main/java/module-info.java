@@ -7,11 +7,13 @@ module org.jetbrains.plugins.terminal {
     requires consulo.code.editor.api;
     requires consulo.component.api;
     requires consulo.configurable.api;
+    requires consulo.container.api;
     requires consulo.disposer.api;
     requires consulo.execution.api;
     requires consulo.file.chooser.api;
     requires consulo.language.editor.api;
     requires consulo.localize.api;
+    requires consulo.logging.api;
     requires consulo.module.content.api;
     requires consulo.platform.api;
     requires consulo.project.api;
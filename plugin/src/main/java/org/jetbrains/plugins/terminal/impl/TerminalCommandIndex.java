@@ -0,0 +1,188 @@
+package org.jetbrains.plugins.terminal.impl;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * State of commands run in a session with shell integration. It's read incrementally from status file,
+ * where shell integration appends {@code C <command>} when command starts and {@code P <exit code>} when prompt is shown.
+ * Only the last command is kept.
+ * <p>
+ * Times are times when records were read, so they are precise up to sampling interval of {@link TerminalProcessSampler}.
+ */
+final class TerminalCommandIndex
+{
+	private static final int MAX_READ_BYTES = 1024 * 1024;
+
+	static final class Command
+	{
+		private final String myText;
+		private volatile int myExitCode = -1;
+
+		private Command(String text)
+		{
+			myText = text;
+		}
+
+		@Nonnull
+		String getText()
+		{
+			return myText;
+		}
+
+		/**
+		 * @return exit code of command, or -1 if it's still running
+		 */
+		int getExitCode()
+		{
+			return myExitCode;
+		}
+	}
+
+	private final Path myStatusFile;
+	private Command myLastCommand;
+	private long myOffset;
+	private boolean myPromptSeen;
+	private boolean myAtPrompt;
+	private long myLastActivityMillis = System.currentTimeMillis();
+
+	TerminalCommandIndex(@Nonnull Path statusFile)
+	{
+		myStatusFile = statusFile;
+	}
+
+	/**
+	 * Reads records appended to status file since previous update
+	 */
+	synchronized void update()
+	{
+		try (FileChannel channel = FileChannel.open(myStatusFile, StandardOpenOption.READ))
+		{
+			long size = channel.size();
+			if(size < myOffset)
+			{
+				// launcher truncates file left by a previous shell with the same pid, it could be read before that
+				myOffset = 0;
+				myLastCommand = null;
+				myPromptSeen = false;
+				myAtPrompt = false;
+			}
+			if(size <= myOffset)
+			{
+				return;
+			}
+
+			ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(size - myOffset, MAX_READ_BYTES));
+			channel.read(buffer, myOffset);
+
+			// only complete lines are consumed, the rest is read again on next update
+			byte[] bytes = buffer.array();
+			int end = buffer.position();
+			while(end > 0 && bytes[end - 1] != '\n')
+			{
+				end--;
+			}
+			if(end == 0)
+			{
+				// line longer than read limit, skip it
+				myOffset += buffer.position() == MAX_READ_BYTES ? MAX_READ_BYTES : 0;
+				return;
+			}
+			myOffset += end;
+
+			long now = System.currentTimeMillis();
+			for(String line : new String(bytes, 0, end, StandardCharsets.UTF_8).split("\n"))
+			{
+				parse(line);
+			}
+			myLastActivityMillis = now;
+		}
+		catch(NoSuchFileException e)
+		{
+			// shell without integration, or it didn't show prompt yet
+		}
+		catch(IOException | SecurityException e)
+		{
+			// will be read on next update
+		}
+	}
+
+	private void parse(@Nonnull String line)
+	{
+		if(line.startsWith("C "))
+		{
+			myLastCommand = new Command(line.substring(2));
+			myAtPrompt = false;
+		}
+		else if(line.startsWith("P "))
+		{
+			Command command = myLastCommand;
+			if(command != null && command.myExitCode < 0)
+			{
+				try
+				{
+					command.myExitCode = Integer.parseInt(line.substring(2).trim());
+				}
+				catch(NumberFormatException e)
+				{
+					command.myExitCode = 0;
+				}
+			}
+			myPromptSeen = true;
+			myAtPrompt = true;
+		}
+	}
+
+	/**
+	 * @return true if shell integration reported at least one prompt, so state of index can be trusted
+	 */
+	synchronized boolean isAvailable()
+	{
+		return myPromptSeen;
+	}
+
+	/**
+	 * @return true if shell waits at prompt. Meaningful only if index {@link #isAvailable()}
+	 */
+	synchronized boolean isAtPrompt()
+	{
+		return myAtPrompt;
+	}
+
+	/**
+	 * @return time when last command started or prompt was shown, or when index was created if there were none
+	 */
+	synchronized long getLastActivityMillis()
+	{
+		return myLastActivityMillis;
+	}
+
+	@Nullable
+	synchronized Command getLastCommand()
+	{
+		return myLastCommand;
+	}
+
+	/**
+	 * Deletes status file, must be called after shell is terminated
+	 */
+	void delete()
+	{
+		try
+		{
+			Files.deleteIfExists(myStatusFile);
+		}
+		catch(IOException | SecurityException ignored)
+		{
+		}
+	}
+}
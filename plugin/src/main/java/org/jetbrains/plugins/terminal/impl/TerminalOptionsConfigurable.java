@@ -20,21 +20,28 @@ import consulo.configurable.ProjectConfigurable;
 import consulo.configurable.SimpleConfigurableByProperties;
 import consulo.configurable.StandardConfigurableIds;
 import consulo.disposer.Disposable;
+import consulo.disposer.Disposer;
 import consulo.fileChooser.FileChooserDescriptorFactory;
 import consulo.fileChooser.FileChooserTextBoxBuilder;
 import consulo.localize.LocalizeValue;
 import consulo.project.Project;
 import consulo.terminal.localize.TerminalLocalize;
 import consulo.ui.CheckBox;
+import consulo.ui.ComboBox;
 import consulo.ui.Component;
+import consulo.ui.IntBox;
 import consulo.ui.TextBox;
+import consulo.ui.UIAccess;
 import consulo.ui.annotation.RequiredUIAccess;
+import consulo.ui.model.MutableListModel;
 import consulo.ui.util.FormBuilder;
 import jakarta.annotation.Nonnull;
 import jakarta.annotation.Nullable;
 import jakarta.inject.Inject;
 import jakarta.inject.Provider;
 
+import java.util.ArrayList;
+
 /**
  * @author traff
  */
@@ -71,11 +78,78 @@ public class TerminalOptionsConfigurable extends SimpleConfigurableByProperties
 		builder.addLabeled(LocalizeValue.localizeTODO("Shell path:"), shellPathBox);
 		propertyBuilder.add(shellController::getValue, shellController::setValue, terminalOptionsProvider::getShellPath, terminalOptionsProvider::setShellPath);
 
+		// filled when first scan of shells is finished
+		MutableListModel<TerminalShellDiscovery.Shell> detectedShells = MutableListModel.of(new ArrayList<>());
+		ComboBox<TerminalShellDiscovery.Shell> detectedShellsBox = ComboBox.create(detectedShells);
+		detectedShellsBox.addValueListener(event ->
+		{
+			TerminalShellDiscovery.Shell shell = event.getValue();
+			if(shell != null)
+			{
+				shellController.setValue(shell.getPath());
+			}
+		});
+		builder.addLabeled(LocalizeValue.localizeTODO("Detected shells:"), detectedShellsBox);
+
+		UIAccess uiAccess = UIAccess.current();
+		TerminalShellDiscovery.getInstance().getShellsAsync().thenAccept(shells -> uiAccess.give(() ->
+		{
+			if(!Disposer.isDisposed(uiDisposable))
+			{
+				shells.forEach(detectedShells::add);
+			}
+		}));
+
 		TextBox tabNameBox = TextBox.create();
 		tabNameBox.withPlaceholder(terminalOptionsProvider.getDefaultTabName().getValue());
 		builder.addLabeled(LocalizeValue.localizeTODO("Tab name:"), tabNameBox);
 		propertyBuilder.add(tabNameBox, terminalOptionsProvider::getTabName, terminalOptionsProvider::setTabName);
 
+		IntBox pooledSessionCountBox = IntBox.create();
+		pooledSessionCountBox.setRange(0, 10);
+		builder.addLabeled(LocalizeValue.localizeTODO("Pre-started sessions:"), pooledSessionCountBox);
+		propertyBuilder.add(pooledSessionCountBox, terminalOptionsProvider::getPooledSessionCount, terminalOptionsProvider::setPooledSessionCount);
+
+		IntBox parallelSessionStartsBox = IntBox.create();
+		parallelSessionStartsBox.setRange(1, 16);
+		builder.addLabeled(LocalizeValue.localizeTODO("Sessions started in parallel:"), parallelSessionStartsBox);
+		propertyBuilder.add(parallelSessionStartsBox, terminalOptionsProvider::getParallelSessionStarts, terminalOptionsProvider::setParallelSessionStarts);
+
+		IntBox maxSessionsBox = IntBox.create();
+		maxSessionsBox.setRange(0, 1000);
+		builder.addLabeled(LocalizeValue.localizeTODO("Maximum sessions in all projects (0 for unlimited):"), maxSessionsBox);
+		propertyBuilder.add(maxSessionsBox, terminalOptionsProvider::getMaxSessions, terminalOptionsProvider::setMaxSessions);
+
+		IntBox hibernateIdleMinutesBox = IntBox.create();
+		hibernateIdleMinutesBox.setRange(0, 7 * 24 * 60);
+		builder.addLabeled(LocalizeValue.localizeTODO("End sessions idle for, minutes (0 to disable):"), hibernateIdleMinutesBox);
+		propertyBuilder.add(hibernateIdleMinutesBox, terminalOptionsProvider::getHibernateIdleMinutes, terminalOptionsProvider::setHibernateIdleMinutes);
+
+		IntBox floodThresholdBox = IntBox.create();
+		floodThresholdBox.setRange(0, Integer.MAX_VALUE);
+		builder.addLabeled(LocalizeValue.localizeTODO("Pause rendering when estimated output exceeds, KB/s (0 to disable):"), floodThresholdBox);
+		propertyBuilder.add(floodThresholdBox, terminalOptionsProvider::getFloodThreshold, terminalOptionsProvider::setFloodThreshold);
+
+		CheckBox fastStart = CheckBox.create(LocalizeValue.localizeTODO("Fast start: reuse environment of login shell, start shell as non-login"));
+		builder.addBottom(fastStart);
+		propertyBuilder.add(fastStart, terminalOptionsProvider::isFastStart, terminalOptionsProvider::setFastStart);
+
+		CheckBox shellIntegration = CheckBox.create(LocalizeValue.localizeTODO("Shell integration: mark prompts and commands in bash, zsh and fish"));
+		builder.addBottom(shellIntegration);
+		propertyBuilder.add(shellIntegration, terminalOptionsProvider::isShellIntegration, terminalOptionsProvider::setShellIntegration);
+
+		CheckBox startSessionOnShow = CheckBox.create(LocalizeValue.localizeTODO("Start session only when tool window is shown"));
+		builder.addBottom(startSessionOnShow);
+		propertyBuilder.add(startSessionOnShow, terminalOptionsProvider::isStartSessionOnShow, terminalOptionsProvider::setStartSessionOnShow);
+
+		CheckBox reuseIdleSession = CheckBox.create(LocalizeValue.localizeTODO("Reuse idle session for 'Open in Terminal'"));
+		builder.addBottom(reuseIdleSession);
+		propertyBuilder.add(reuseIdleSession, terminalOptionsProvider::isReuseIdleSession, terminalOptionsProvider::setReuseIdleSession);
+
+		CheckBox restoreTabs = CheckBox.create(LocalizeValue.localizeTODO("Restore tabs on project reopen"));
+		builder.addBottom(restoreTabs);
+		propertyBuilder.add(restoreTabs, terminalOptionsProvider::isRestoreTabs, terminalOptionsProvider::setRestoreTabs);
+
 		CheckBox closeSessionWhenItEnds = CheckBox.create(LocalizeValue.localizeTODO("Close session when it ends"));
 		builder.addBottom(closeSessionWhenItEnds);
 		propertyBuilder.add(closeSessionWhenItEnds, terminalOptionsProvider::closeSessionOnLogout, terminalOptionsProvider::setCloseSessionOnLogout);
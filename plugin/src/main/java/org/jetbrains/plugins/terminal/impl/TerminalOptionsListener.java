@@ -0,0 +1,19 @@
+package org.jetbrains.plugins.terminal.impl;
+
+import consulo.annotation.component.ComponentScope;
+import consulo.annotation.component.TopicAPI;
+
+/**
+ * Notified when terminal options that affect already started sessions are changed.
+ */
+@TopicAPI(ComponentScope.APPLICATION)
+public interface TerminalOptionsListener
+{
+	default void shellPathChanged()
+	{
+	}
+
+	default void pooledSessionCountChanged()
+	{
+	}
+}
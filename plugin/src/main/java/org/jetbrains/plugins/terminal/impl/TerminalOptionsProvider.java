@@ -18,7 +18,6 @@ package org.jetbrains.plugins.terminal.impl;
 import consulo.annotation.component.ComponentScope;
 import consulo.annotation.component.ServiceAPI;
 import consulo.annotation.component.ServiceImpl;
-import consulo.application.util.SystemInfo;
 import consulo.component.persist.PersistentStateComponent;
 import consulo.component.persist.State;
 import consulo.component.persist.Storage;
@@ -26,13 +25,11 @@ import consulo.component.persist.StoragePathMacros;
 import consulo.execution.ui.terminal.TerminalConsoleSettings;
 import consulo.application.Application;
 import consulo.localize.LocalizeValue;
-import consulo.platform.Platform;
 import consulo.util.lang.StringUtil;
 import jakarta.inject.Singleton;
 
 import jakarta.annotation.Nonnull;
 import jakarta.annotation.Nullable;
-import java.io.File;
 import java.util.Objects;
 
 /**
@@ -60,7 +57,8 @@ public class TerminalOptionsProvider implements PersistentStateComponent<Termina
 	@Override
 	public void loadState(State state)
 	{
-		myState.myShellPath = state.myShellPath;
+		// reset shell path if is default, so change of default is picked up
+		myState.myShellPath = Objects.equals(state.myShellPath, TerminalShellDiscovery.getInstance().peekDefaultShellPath()) ? null : state.myShellPath;
 		myState.myCloseSessionOnLogout = state.myCloseSessionOnLogout;
 		myState.myReportMouse = state.myReportMouse;
 		myState.mySoundBell = state.mySoundBell;
@@ -68,6 +66,16 @@ public class TerminalOptionsProvider implements PersistentStateComponent<Termina
 		myState.myCopyOnSelection = state.myCopyOnSelection;
 		myState.myPasteOnMiddleMouseButton = state.myPasteOnMiddleMouseButton;
 		myState.myOverrideIdeShortcuts = state.myOverrideIdeShortcuts;
+		myState.myPooledSessionCount = state.myPooledSessionCount;
+		myState.myStartSessionOnShow = state.myStartSessionOnShow;
+		myState.myReuseIdleSession = state.myReuseIdleSession;
+		myState.myRestoreTabs = state.myRestoreTabs;
+		myState.myFloodThreshold = state.myFloodThreshold;
+		myState.myFastStart = state.myFastStart;
+		myState.myShellIntegration = state.myShellIntegration;
+		myState.myParallelSessionStarts = state.myParallelSessionStarts;
+		myState.myMaxSessions = state.myMaxSessions;
+		myState.myHibernateIdleMinutes = state.myHibernateIdleMinutes;
 	}
 
 	@Override
@@ -115,6 +123,16 @@ public class TerminalOptionsProvider implements PersistentStateComponent<Termina
 		public boolean myCopyOnSelection = true;
 		public boolean myPasteOnMiddleMouseButton = true;
 		public boolean myOverrideIdeShortcuts = true;
+		public int myPooledSessionCount = 1;
+		public boolean myStartSessionOnShow = true;
+		public boolean myReuseIdleSession = true;
+		public boolean myRestoreTabs = true;
+		public int myFloodThreshold;
+		public boolean myFastStart;
+		public boolean myShellIntegration;
+		public int myParallelSessionStarts = 2;
+		public int myMaxSessions;
+		public int myHibernateIdleMinutes;
 	}
 
 	@Override
@@ -144,14 +162,6 @@ public class TerminalOptionsProvider implements PersistentStateComponent<Termina
 	@Nonnull
 	public String getShellPathOrDefault()
 	{
-		String defaultShellPath = getDefaultShellPath();
-
-		if(Objects.equals(getShellPath(), defaultShellPath))
-		{
-			// reset shell path if is default
-			setShellPath(null);
-		}
-
 		String shellPath = getShellPath();
 		if(StringUtil.isEmptyOrSpaces(shellPath))
 		{
@@ -160,29 +170,24 @@ public class TerminalOptionsProvider implements PersistentStateComponent<Termina
 		return shellPath;
 	}
 
+	/**
+	 * @return default shell from {@link TerminalShellDiscovery}, which checks it on file system only once
+	 */
 	@Nonnull
 	public String getDefaultShellPath()
 	{
-		String shell = Platform.current().os().getEnvironmentVariable("SHELL");
-
-		if(shell != null && new File(shell).canExecute())
-		{
-			return shell;
-		}
-
-		if(SystemInfo.isUnix)
-		{
-			return "/bin/bash";
-		}
-		else
-		{
-			return "cmd.exe";
-		}
+		return TerminalShellDiscovery.getInstance().getDefaultShellPath();
 	}
 
 	public void setShellPath(String shellPath)
 	{
+		String oldShellPath = myState.myShellPath;
 		myState.myShellPath = shellPath;
+
+		if(!Objects.equals(StringUtil.nullize(oldShellPath, true), StringUtil.nullize(shellPath, true)))
+		{
+			Application.get().getMessageBus().syncPublisher(TerminalOptionsListener.class).shellPathChanged();
+		}
 	}
 
 	public void setTabName(String tabName)
@@ -226,5 +231,130 @@ public class TerminalOptionsProvider implements PersistentStateComponent<Termina
 	{
 		myState.myPasteOnMiddleMouseButton = pasteOnMiddleMouseButton;
 	}
-}
 
+	public int getPooledSessionCount()
+	{
+		return Math.max(0, myState.myPooledSessionCount);
+	}
+
+	public void setPooledSessionCount(int pooledSessionCount)
+	{
+		int oldPooledSessionCount = myState.myPooledSessionCount;
+		myState.myPooledSessionCount = pooledSessionCount;
+
+		if(oldPooledSessionCount != pooledSessionCount)
+		{
+			Application.get().getMessageBus().syncPublisher(TerminalOptionsListener.class).pooledSessionCountChanged();
+		}
+	}
+
+	public boolean isStartSessionOnShow()
+	{
+		return myState.myStartSessionOnShow;
+	}
+
+	public void setStartSessionOnShow(boolean startSessionOnShow)
+	{
+		myState.myStartSessionOnShow = startSessionOnShow;
+	}
+
+	public boolean isReuseIdleSession()
+	{
+		return myState.myReuseIdleSession;
+	}
+
+	public void setReuseIdleSession(boolean reuseIdleSession)
+	{
+		myState.myReuseIdleSession = reuseIdleSession;
+	}
+
+	public boolean isRestoreTabs()
+	{
+		return myState.myRestoreTabs;
+	}
+
+	public void setRestoreTabs(boolean restoreTabs)
+	{
+		myState.myRestoreTabs = restoreTabs;
+	}
+
+	/**
+	 * @return estimated output rate in KB/s, above which tab rendering is paused, or 0 if flood protection is disabled.
+	 * Disabled by default, since the rate is estimated by all writes of processes attached to the terminal, not only writes to it
+	 */
+	public int getFloodThreshold()
+	{
+		return Math.max(0, myState.myFloodThreshold);
+	}
+
+	public void setFloodThreshold(int floodThreshold)
+	{
+		myState.myFloodThreshold = floodThreshold;
+	}
+
+	/**
+	 * @return true if sessions are started as non-login shells with environment captured from login shell, see {@link TerminalShellEnvironment}
+	 */
+	public boolean isFastStart()
+	{
+		return myState.myFastStart;
+	}
+
+	public void setFastStart(boolean fastStart)
+	{
+		myState.myFastStart = fastStart;
+	}
+
+	/**
+	 * @return true if bash, zsh and fish are started with scripts, which mark prompts and commands, see {@link TerminalShellLauncher}
+	 */
+	public boolean isShellIntegration()
+	{
+		return myState.myShellIntegration;
+	}
+
+	public void setShellIntegration(boolean shellIntegration)
+	{
+		myState.myShellIntegration = shellIntegration;
+	}
+
+	/**
+	 * @return how many sessions may be started at the same time, e.g. when terminal is opened for several directories at once
+	 */
+	public int getParallelSessionStarts()
+	{
+		return Math.max(1, myState.myParallelSessionStarts);
+	}
+
+	public void setParallelSessionStarts(int parallelSessionStarts)
+	{
+		myState.myParallelSessionStarts = parallelSessionStarts;
+	}
+
+	/**
+	 * @return maximum count of running sessions in all projects, including pre-started ones, or 0 if it's not limited
+	 */
+	public int getMaxSessions()
+	{
+		return Math.max(0, myState.myMaxSessions);
+	}
+
+	public void setMaxSessions(int maxSessions)
+	{
+		myState.myMaxSessions = maxSessions;
+	}
+
+	/**
+	 * @return minutes after which session without running commands and output is terminated, remembering its directory,
+	 * and is started again when its tab is selected, or 0 if sessions are never hibernated
+	 */
+	public int getHibernateIdleMinutes()
+	{
+		return Math.max(0, myState.myHibernateIdleMinutes);
+	}
+
+	public void setHibernateIdleMinutes(int hibernateIdleMinutes)
+	{
+		myState.myHibernateIdleMinutes = hibernateIdleMinutes;
+	}
+}
@@ -0,0 +1,311 @@
+package org.jetbrains.plugins.terminal.impl;
+
+import consulo.annotation.component.ComponentScope;
+import consulo.annotation.component.ServiceAPI;
+import consulo.annotation.component.ServiceImpl;
+import consulo.application.Application;
+import consulo.application.util.concurrent.AppExecutorUtil;
+import consulo.disposer.Disposable;
+import consulo.logging.Logger;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import jakarta.inject.Singleton;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Periodically samples CPU, memory and estimated terminal output rate of shell process trees of all terminal tabs,
+ * and reads commands reported by their shell integration.
+ * <p>
+ * One task samples all tabs. It runs often while some tree is busy and backs off while all shells are idle.
+ */
+@Singleton
+@ServiceAPI(ComponentScope.APPLICATION)
+@ServiceImpl
+public class TerminalProcessSampler implements Disposable
+{
+	private static final Logger LOG = Logger.getInstance(TerminalProcessSampler.class);
+
+	private static final long BUSY_INTERVAL_MILLIS = 2000;
+	private static final long IDLE_INTERVAL_MILLIS = 10000;
+	private static final double BUSY_CPU_PERCENT = 1;
+
+	private static class Sample
+	{
+		private final long myTimeNanos;
+		private final Map<Long, Long> myCpuNanos;
+		private final Map<Long, Long> myWrittenBytes;
+
+		private Sample(long timeNanos, Map<Long, Long> cpuNanos, Map<Long, Long> writtenBytes)
+		{
+			myTimeNanos = timeNanos;
+			myCpuNanos = cpuNanos;
+			myWrittenBytes = writtenBytes;
+		}
+	}
+
+	private final Map<TerminalTab, Runnable> myTabs = new ConcurrentHashMap<>();
+	// accessed only from sampling task
+	private final Map<TerminalTab, Sample> myLastSamples = new HashMap<>();
+
+	private final Object myLock = new Object();
+	private ScheduledFuture<?> myFuture;
+	private boolean myDisposed;
+
+	@Nonnull
+	public static TerminalProcessSampler getInstance()
+	{
+		return Application.get().getInstance(TerminalProcessSampler.class);
+	}
+
+	/**
+	 * Starts sampling of tab process tree
+	 *
+	 * @param onUpdate called from background thread after usage of tab was sampled
+	 */
+	void register(@Nonnull TerminalTab tab, @Nonnull Runnable onUpdate)
+	{
+		myTabs.put(tab, onUpdate);
+		schedule(0);
+	}
+
+	void unregister(@Nonnull TerminalTab tab)
+	{
+		myTabs.remove(tab);
+	}
+
+	private void schedule(long delayMillis)
+	{
+		synchronized(myLock)
+		{
+			if(myDisposed || myFuture != null && !myFuture.isDone())
+			{
+				return;
+			}
+			myFuture = AppExecutorUtil.getAppScheduledExecutorService().schedule(this::sample, delayMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private void sample()
+	{
+		boolean busy = false;
+		try
+		{
+			myLastSamples.keySet().retainAll(myTabs.keySet());
+
+			for(Map.Entry<TerminalTab, Runnable> entry : myTabs.entrySet())
+			{
+				TerminalTab tab = entry.getKey();
+				ProcessHandle process = tab.getProcess();
+				if(process == null)
+				{
+					continue;
+				}
+
+				sample(tab, process);
+				busy |= tab.getCpuPercent() >= BUSY_CPU_PERCENT;
+				if(process.children().findAny().isPresent())
+				{
+					tab.markActive();
+				}
+
+				TerminalCommandIndex commandIndex = tab.getCommandIndex();
+				if(commandIndex != null)
+				{
+					commandIndex.update();
+				}
+
+				entry.getValue().run();
+			}
+		}
+		catch(Throwable e)
+		{
+			LOG.warn(e);
+		}
+
+		synchronized(myLock)
+		{
+			myFuture = null;
+		}
+
+		if(!myTabs.isEmpty())
+		{
+			schedule(busy ? BUSY_INTERVAL_MILLIS : IDLE_INTERVAL_MILLIS);
+		}
+	}
+
+	private void sample(@Nonnull TerminalTab tab, @Nonnull ProcessHandle process)
+	{
+		if(!process.isAlive())
+		{
+			myLastSamples.remove(tab);
+			tab.setUsage(0, -1, -1, 0);
+			return;
+		}
+
+		List<ProcessHandle> tree = Stream.concat(Stream.of(process), process.descendants()).collect(Collectors.toList());
+
+		// processes writing to other terminal (or nowhere) don't produce output of this tab
+		String terminal = readOutputTarget(process.pid());
+
+		Map<Long, Long> cpuNanos = new HashMap<>();
+		Map<Long, Long> writtenBytes = new HashMap<>();
+		long rssBytes = 0;
+		boolean rssKnown = true;
+		for(ProcessHandle handle : tree)
+		{
+			handle.info().totalCpuDuration().map(Duration::toNanos).ifPresent(cpu -> cpuNanos.put(handle.pid(), cpu));
+
+			long rss = readRssBytes(handle.pid());
+			if(rss < 0)
+			{
+				rssKnown = false;
+			}
+			else
+			{
+				rssBytes += rss;
+			}
+
+			if(terminal != null && terminal.equals(readOutputTarget(handle.pid())))
+			{
+				long written = readWrittenBytes(handle.pid());
+				if(written >= 0)
+				{
+					writtenBytes.put(handle.pid(), written);
+				}
+			}
+		}
+
+		long now = System.nanoTime();
+		Sample lastSample = myLastSamples.put(tab, new Sample(now, cpuNanos, writtenBytes));
+
+		double cpuPercent = 0;
+		long outputBytesPerSecond = terminal == null ? -1 : 0;
+		long outputBytes = 0;
+		if(lastSample != null && now > lastSample.myTimeNanos)
+		{
+			long elapsedNanos = now - lastSample.myTimeNanos;
+
+			cpuPercent = delta(cpuNanos, lastSample.myCpuNanos) * 100.0 / elapsedNanos;
+
+			if(terminal != null)
+			{
+				outputBytes = delta(writtenBytes, lastSample.myWrittenBytes);
+				outputBytesPerSecond = outputBytes * TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+			}
+		}
+
+		tab.setUsage(cpuPercent, rssKnown ? rssBytes : -1, outputBytesPerSecond, outputBytes);
+	}
+
+	/**
+	 * Sums growth of per-process counters. Processes started after previous sample are accounted by their whole counter value
+	 */
+	private static long delta(@Nonnull Map<Long, Long> current, @Nonnull Map<Long, Long> previous)
+	{
+		long delta = 0;
+		for(Map.Entry<Long, Long> entry : current.entrySet())
+		{
+			Long previousValue = previous.get(entry.getKey());
+			delta += Math.max(0, entry.getValue() - (previousValue == null ? 0 : previousValue));
+		}
+		return delta;
+	}
+
+	/**
+	 * @return file, which stdout of process is connected to, or null if it can't be read on this OS
+	 */
+	@Nullable
+	private static String readOutputTarget(long pid)
+	{
+		try
+		{
+			return Files.readSymbolicLink(Paths.get("/proc", String.valueOf(pid), "fd", "1")).toString();
+		}
+		catch(IOException | UnsupportedOperationException | SecurityException e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * @return count of bytes written by process from /proc/[pid]/io, or -1 if it can't be read.
+	 * It includes writes to all files, pipes and sockets, since writes to the terminal alone are not accounted by the OS
+	 */
+	private static long readWrittenBytes(long pid)
+	{
+		try
+		{
+			for(String line : Files.readAllLines(Paths.get("/proc", String.valueOf(pid), "io")))
+			{
+				if(line.startsWith("wchar:"))
+				{
+					return Long.parseLong(line.substring("wchar:".length()).trim());
+				}
+			}
+			return -1;
+		}
+		catch(IOException | NumberFormatException | SecurityException e)
+		{
+			return -1;
+		}
+	}
+
+	/**
+	 * @return resident set size of process from /proc/[pid]/status, or -1 if it can't be read on this OS
+	 */
+	private static long readRssBytes(long pid)
+	{
+		Path status = Paths.get("/proc", String.valueOf(pid), "status");
+		try
+		{
+			for(String line : Files.readAllLines(status))
+			{
+				if(line.startsWith("VmRSS:"))
+				{
+					String value = line.substring("VmRSS:".length()).trim();
+					int space = value.indexOf(' ');
+					return Long.parseLong(space < 0 ? value : value.substring(0, space)) * 1024;
+				}
+			}
+			// kernel threads and zombies have no VmRSS
+			return 0;
+		}
+		catch(NoSuchFileException e)
+		{
+			// process exited
+			return 0;
+		}
+		catch(IOException | NumberFormatException | SecurityException e)
+		{
+			return -1;
+		}
+	}
+
+	@Override
+	public void dispose()
+	{
+		synchronized(myLock)
+		{
+			myDisposed = true;
+			if(myFuture != null)
+			{
+				myFuture.cancel(false);
+			}
+		}
+		myTabs.clear();
+	}
+}
@@ -0,0 +1,89 @@
+package org.jetbrains.plugins.terminal.impl;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Helpers to inspect shell processes of terminal sessions.
+ * <p>
+ * Sessions don't expose their process, so the shell reports its pid itself, see {@link TerminalShellLauncher.Launch}.
+ */
+final class TerminalProcessUtil
+{
+	private TerminalProcessUtil()
+	{
+	}
+
+	/**
+	 * @return true if process was started by the IDE, directly or through other processes
+	 */
+	static boolean isDescendantOfIde(@Nonnull ProcessHandle process)
+	{
+		long idePid = ProcessHandle.current().pid();
+		for(ProcessHandle parent = process.parent().orElse(null); parent != null; parent = parent.parent().orElse(null))
+		{
+			if(parent.pid() == idePid)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return current working directory of process, or null if it can't be read on this OS
+	 */
+	@Nullable
+	static String getWorkingDirectory(@Nonnull ProcessHandle process)
+	{
+		Path cwdLink = Paths.get("/proc", String.valueOf(process.pid()), "cwd");
+		try
+		{
+			return Files.readSymbolicLink(cwdLink).toString();
+		}
+		catch(IOException | UnsupportedOperationException | SecurityException e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * @param parentPids result of {@link #getParentPids()}
+	 * @return true if process is alive and has no running children, i.e. shell is waiting at prompt
+	 */
+	static boolean isIdle(@Nonnull ProcessHandle process, @Nonnull Set<Long> parentPids)
+	{
+		return process.isAlive() && !parentPids.contains(process.pid());
+	}
+
+	/**
+	 * @return pids of all processes which have child processes, collected by one pass over process table
+	 */
+	@Nonnull
+	static Set<Long> getParentPids()
+	{
+		return ProcessHandle.allProcesses()
+				.flatMap(handle -> handle.parent().stream())
+				.map(ProcessHandle::pid)
+				.collect(Collectors.toSet());
+	}
+
+	static boolean isSamePath(@Nonnull String path1, @Nonnull String path2)
+	{
+		try
+		{
+			return Paths.get(path1).toRealPath().equals(Paths.get(path2).toRealPath());
+		}
+		catch(IOException | RuntimeException e)
+		{
+			return Paths.get(path1).normalize().equals(Paths.get(path2).normalize());
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package org.jetbrains.plugins.terminal.impl;
+
+import consulo.annotation.component.ComponentScope;
+import consulo.annotation.component.ServiceAPI;
+import consulo.annotation.component.ServiceImpl;
+import consulo.application.Application;
+import consulo.disposer.Disposable;
+import consulo.disposer.Disposer;
+import consulo.project.Project;
+import consulo.ui.annotation.RequiredUIAccess;
+import consulo.ui.ex.awt.Messages;
+import consulo.ui.ex.content.Content;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import jakarta.inject.Singleton;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Application-wide accounting of terminal sessions of all projects. Each running shell, including pre-started ones,
+ * holds a slot, so the total count of sessions is limited by {@link TerminalOptionsProvider#getMaxSessions()}.
+ * <p>
+ * A tab can be reopened in another project, see {@link #reopenTab(Project, Content, Project)}.
+ */
+@Singleton
+@ServiceAPI(ComponentScope.APPLICATION)
+@ServiceImpl
+public class TerminalSessionHost
+{
+	private final AtomicInteger mySessionCount = new AtomicInteger();
+
+	@Nonnull
+	public static TerminalSessionHost getInstance()
+	{
+		return Application.get().getInstance(TerminalSessionHost.class);
+	}
+
+	/**
+	 * Takes a session slot, if the limit is not reached yet
+	 *
+	 * @param parentDisposable slot is released when it's disposed
+	 * @return disposable of the slot, which may be disposed to release it earlier, or null if the limit is reached
+	 */
+	@Nullable
+	Disposable acquire(@Nonnull Disposable parentDisposable)
+	{
+		int maxSessions = TerminalOptionsProvider.getInstance().getMaxSessions();
+		while(true)
+		{
+			int count = mySessionCount.get();
+			if(maxSessions > 0 && count >= maxSessions)
+			{
+				return null;
+			}
+			if(mySessionCount.compareAndSet(count, count + 1))
+			{
+				break;
+			}
+		}
+
+		AtomicBoolean released = new AtomicBoolean();
+		Disposable slot = () ->
+		{
+			if(released.compareAndSet(false, true))
+			{
+				mySessionCount.decrementAndGet();
+			}
+		};
+		Disposer.register(parentDisposable, slot);
+		return slot;
+	}
+
+	/**
+	 * Moves tab from terminal view of source project to terminal view of target project.
+	 * Console is bound to its project and can't be moved, so session of the tab is ended, with its scrollback and running commands,
+	 * and a new session is started in target project in the current directory of shell. Tab, which session is starting, is not moved
+	 */
+	@RequiredUIAccess
+	void reopenTab(@Nonnull Project sourceProject, @Nonnull Content content, @Nonnull Project targetProject)
+	{
+		String tabName = content.getDisplayName();
+		TerminalTab tab = TerminalView.getInstance(sourceProject).detachTab(content);
+		if(tab == null)
+		{
+			Messages.showInfoMessage(sourceProject, "Terminal tab '" + tabName + "' can't be reopened while its session is starting", "Reopen Terminal Tab");
+			return;
+		}
+		TerminalView.getInstance(targetProject).attachTab(tabName, tab);
+	}
+}
@@ -0,0 +1,167 @@
+package org.jetbrains.plugins.terminal.impl;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+
+/**
+ * Snapshot of metrics of one terminal tab, see {@link TerminalView#getSessionMetrics()}
+ */
+public final class TerminalSessionMetrics
+{
+	private final String myTabName;
+	private final String myWorkDirectory;
+	private final long myPid;
+	private final long mySpawnLatencyMillis;
+	private final boolean myFromPool;
+	private final long myStartTimeMillis;
+	private final double myCpuPercent;
+	private final long myRssBytes;
+	private final String myLastCommand;
+	private final int myLastExitCode;
+
+	TerminalSessionMetrics(@Nonnull String tabName,
+						   @Nonnull String workDirectory,
+						   long pid,
+						   long spawnLatencyMillis,
+						   boolean fromPool,
+						   long startTimeMillis,
+						   double cpuPercent,
+						   long rssBytes,
+						   @Nullable String lastCommand,
+						   int lastExitCode)
+	{
+		myTabName = tabName;
+		myWorkDirectory = workDirectory;
+		myPid = pid;
+		mySpawnLatencyMillis = spawnLatencyMillis;
+		myFromPool = fromPool;
+		myStartTimeMillis = startTimeMillis;
+		myCpuPercent = cpuPercent;
+		myRssBytes = rssBytes;
+		myLastCommand = lastCommand;
+		myLastExitCode = lastExitCode;
+	}
+
+	@Nonnull
+	public String getTabName()
+	{
+		return myTabName;
+	}
+
+	@Nonnull
+	public String getWorkDirectory()
+	{
+		return myWorkDirectory;
+	}
+
+	/**
+	 * @return pid of shell process, or -1 if session is not started or its process is unknown
+	 */
+	public long getPid()
+	{
+		return myPid;
+	}
+
+	/**
+	 * @return time from spawn request till console was shown, or -1 if session is not started yet
+	 */
+	public long getSpawnLatencyMillis()
+	{
+		return mySpawnLatencyMillis;
+	}
+
+	/**
+	 * @return true if session was taken already started from {@link TerminalSessionPool}
+	 */
+	public boolean isFromPool()
+	{
+		return myFromPool;
+	}
+
+	/**
+	 * @return time when session was started, or -1 if session is not started yet
+	 */
+	public long getStartTimeMillis()
+	{
+		return myStartTimeMillis;
+	}
+
+	/**
+	 * @return CPU usage of shell and all its child processes, 100 per fully used core
+	 */
+	public double getCpuPercent()
+	{
+		return myCpuPercent;
+	}
+
+	/**
+	 * @return resident memory of shell and all its child processes, or -1 if it's unknown
+	 */
+	public long getRssBytes()
+	{
+		return myRssBytes;
+	}
+
+	/**
+	 * @return last command reported by shell integration, or null if there were none or shell has no integration
+	 */
+	@Nullable
+	public String getLastCommand()
+	{
+		return myLastCommand;
+	}
+
+	/**
+	 * @return exit code of {@link #getLastCommand()}, or -1 if it's still running or unknown
+	 */
+	public int getLastExitCode()
+	{
+		return myLastExitCode;
+	}
+
+	@Nonnull
+	String getDescription()
+	{
+		StringBuilder builder = new StringBuilder(myWorkDirectory);
+		if(mySpawnLatencyMillis >= 0)
+		{
+			builder.append("\nStarted in ").append(mySpawnLatencyMillis).append(" ms");
+			if(myFromPool)
+			{
+				builder.append(" (pre-started)");
+			}
+		}
+		if(myPid >= 0)
+		{
+			builder.append("\nPID: ").append(myPid);
+			builder.append("\nCPU: ").append(Math.round(myCpuPercent)).append('%');
+			if(myRssBytes >= 0)
+			{
+				builder.append(", memory: ").append(myRssBytes / (1024 * 1024)).append(" MB");
+			}
+		}
+		if(myLastCommand != null)
+		{
+			builder.append("\nLast command: ").append(myLastCommand);
+			builder.append(myLastExitCode < 0 ? " (running)" : " (exit code " + myLastExitCode + ")");
+		}
+		return builder.toString();
+	}
+
+	@Override
+	public String toString()
+	{
+		return "TerminalSessionMetrics{" +
+				"tabName='" + myTabName + '\'' +
+				", workDirectory='" + myWorkDirectory + '\'' +
+				", pid=" + myPid +
+				", spawnLatencyMillis=" + mySpawnLatencyMillis +
+				", fromPool=" + myFromPool +
+				", startTimeMillis=" + myStartTimeMillis +
+				", cpuPercent=" + myCpuPercent +
+				", rssBytes=" + myRssBytes +
+				", lastCommand='" + myLastCommand + '\'' +
+				", lastExitCode=" + myLastExitCode +
+				'}';
+	}
+}
@@ -0,0 +1,277 @@
+package org.jetbrains.plugins.terminal.impl;
+
+import consulo.annotation.component.ComponentScope;
+import consulo.annotation.component.ServiceAPI;
+import consulo.annotation.component.ServiceImpl;
+import consulo.application.util.SystemInfo;
+import consulo.disposer.Disposable;
+import consulo.disposer.Disposer;
+import consulo.execution.ui.terminal.TerminalConsole;
+import consulo.execution.ui.terminal.TerminalConsoleFactory;
+import consulo.project.Project;
+import consulo.ui.UIAccess;
+import consulo.ui.annotation.RequiredUIAccess;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Keeps a few shells started in the project folder, so a new terminal tab doesn't wait for the shell startup.
+ * <p>
+ * Sessions are started in background and handed out on the UI thread. The pool is filled lazily,
+ * after the first session was requested, and drops sessions started with an outdated shell path.
+ * Pooled shell, which has exited meanwhile, can be detected only by its process, so nothing is pooled
+ * if shell processes can't be determined, see {@link TerminalShellLauncher.Launch}.
+ */
+@Singleton
+@ServiceAPI(ComponentScope.PROJECT)
+@ServiceImpl
+public class TerminalSessionPool implements Disposable
+{
+	public static final class PooledSession
+	{
+		private final TerminalConsole myConsole;
+		private final Disposable myDisposable;
+		private final CompletableFuture<ProcessHandle> myProcess;
+		private final String myShellPath;
+		private final String myWorkDirectory;
+
+		private PooledSession(TerminalConsole console, Disposable disposable, CompletableFuture<ProcessHandle> process, String shellPath, String workDirectory)
+		{
+			myConsole = console;
+			myDisposable = disposable;
+			myProcess = process;
+			myShellPath = shellPath;
+			myWorkDirectory = workDirectory;
+		}
+
+		@Nonnull
+		public TerminalConsole getConsole()
+		{
+			return myConsole;
+		}
+
+		@Nonnull
+		public Disposable getDisposable()
+		{
+			return myDisposable;
+		}
+
+		/**
+		 * @return shell process, see {@link TerminalSessionStarter.StartedSession#getProcess()}
+		 */
+		@Nonnull
+		public CompletableFuture<ProcessHandle> getProcess()
+		{
+			return myProcess;
+		}
+	}
+
+	private final Project myProject;
+	// accessed only from UI thread
+	private final Deque<PooledSession> myIdleSessions = new ArrayDeque<>();
+	private int myStartingCount;
+	private boolean myProcessUnknown = !SystemInfo.isUnix;
+	private volatile boolean myDisposed;
+
+	@Inject
+	public TerminalSessionPool(Project project)
+	{
+		myProject = project;
+
+		project.getApplication().getMessageBus().connect(this).subscribe(TerminalOptionsListener.class, new TerminalOptionsListener()
+		{
+			@Override
+			public void shellPathChanged()
+			{
+				project.getApplication().getLastUIAccess().give(() -> invalidate());
+			}
+
+			@Override
+			public void pooledSessionCountChanged()
+			{
+				project.getApplication().getLastUIAccess().give(() -> resize());
+			}
+		});
+	}
+
+	@Nonnull
+	public static TerminalSessionPool getInstance(@Nonnull Project project)
+	{
+		return project.getInstance(TerminalSessionPool.class);
+	}
+
+	/**
+	 * @return started session for given work directory and shell, or null if there is no such session in pool.
+	 * Sessions, which shell has exited meanwhile (e.g. by autologout), are dropped
+	 */
+	@Nullable
+	@RequiredUIAccess
+	public PooledSession poll(@Nonnull String workDirectory, @Nonnull String shellPath)
+	{
+		String currentShellPath = TerminalOptionsProvider.getInstance().getShellPathOrDefault();
+
+		for(Iterator<PooledSession> iterator = myIdleSessions.iterator(); iterator.hasNext(); )
+		{
+			PooledSession session = iterator.next();
+			// process, which is not reported yet, is considered alive
+			ProcessHandle process = session.myProcess.getNow(null);
+			if(!Objects.equals(session.myShellPath, currentShellPath) || process != null && !process.isAlive())
+			{
+				iterator.remove();
+				Disposer.dispose(session.myDisposable);
+			}
+			else if(Objects.equals(session.myWorkDirectory, workDirectory) && Objects.equals(session.myShellPath, shellPath))
+			{
+				iterator.remove();
+				return session;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Starts as many sessions as needed to fill the pool up to {@link TerminalOptionsProvider#getPooledSessionCount()}
+	 */
+	@RequiredUIAccess
+	public void refill()
+	{
+		int size = TerminalOptionsProvider.getInstance().getPooledSessionCount();
+		if(myDisposed || myProcessUnknown || myIdleSessions.size() + myStartingCount >= size)
+		{
+			return;
+		}
+
+		String workDirectory = TerminalView.currentProjectFolder(myProject);
+		String shellPath = TerminalOptionsProvider.getInstance().getShellPathOrDefault();
+		UIAccess uiAccess = UIAccess.current();
+
+		for(int i = myIdleSessions.size() + myStartingCount; i < size; i++)
+		{
+			Disposable disposable = Disposable.newDisposable("pooled terminal session");
+			if(TerminalSessionHost.getInstance().acquire(disposable) == null)
+			{
+				Disposer.dispose(disposable);
+				return;
+			}
+
+			myStartingCount++;
+
+			TerminalSessionStarter.startAsync(myProject, workDirectory, shellPath).whenComplete((session, error) -> uiAccess.give(() ->
+			{
+				if(error != null)
+				{
+					myStartingCount--;
+					Disposer.dispose(disposable);
+					return;
+				}
+				addStartedSession(session, workDirectory, disposable);
+			}));
+		}
+	}
+
+	@RequiredUIAccess
+	private void addStartedSession(TerminalSessionStarter.StartedSession session, String workDirectory, Disposable disposable)
+	{
+		myStartingCount--;
+
+		TerminalConsoleFactory terminalConsoleFactory = myProject.getInstance(TerminalConsoleFactory.class);
+		TerminalConsole console = terminalConsoleFactory.create(session.getSession(), TerminalOptionsProvider.getInstance(), disposable);
+
+		String shellPath = session.getShellPath();
+		if(myDisposed || !Objects.equals(shellPath, TerminalOptionsProvider.getInstance().getShellPathOrDefault()) ||
+				myIdleSessions.size() >= TerminalOptionsProvider.getInstance().getPooledSessionCount())
+		{
+			Disposer.dispose(disposable);
+			return;
+		}
+
+		PooledSession pooledSession = new PooledSession(console, disposable, session.getProcess(), shellPath, workDirectory);
+		myIdleSessions.addLast(pooledSession);
+
+		UIAccess uiAccess = UIAccess.current();
+		session.getProcess().thenAccept(process -> uiAccess.give(() ->
+		{
+			if(process == null)
+			{
+				myProcessUnknown = true;
+				clear();
+			}
+			else if(!Disposer.isDisposed(disposable))
+			{
+				Disposer.register(disposable, () -> new TerminalCommandIndex(TerminalShellLauncher.getStatusFile(process.pid())).delete());
+			}
+		}));
+	}
+
+	/**
+	 * Drops all idle sessions, which were started with another shell path
+	 */
+	@RequiredUIAccess
+	public void invalidate()
+	{
+		String shellPath = TerminalOptionsProvider.getInstance().getShellPathOrDefault();
+
+		boolean changed = myIdleSessions.removeIf(session ->
+		{
+			if(Objects.equals(session.myShellPath, shellPath))
+			{
+				return false;
+			}
+			Disposer.dispose(session.myDisposable);
+			return true;
+		});
+
+		if(changed)
+		{
+			refill();
+		}
+	}
+
+	/**
+	 * Terminates idle sessions above {@link TerminalOptionsProvider#getPooledSessionCount()}, or starts missing ones
+	 */
+	@RequiredUIAccess
+	public void resize()
+	{
+		int size = TerminalOptionsProvider.getInstance().getPooledSessionCount();
+		while(myIdleSessions.size() > size)
+		{
+			Disposer.dispose(myIdleSessions.removeFirst().myDisposable);
+		}
+
+		// pool is filled only after the first session was requested
+		if(myIdleSessions.size() + myStartingCount > 0)
+		{
+			refill();
+		}
+	}
+
+	/**
+	 * Terminates all idle sessions, e.g. to free session slots for sessions requested by user, see {@link TerminalSessionHost}
+	 */
+	@RequiredUIAccess
+	public void clear()
+	{
+		for(PooledSession session : myIdleSessions)
+		{
+			Disposer.dispose(session.myDisposable);
+		}
+		myIdleSessions.clear();
+	}
+
+	@Override
+	public void dispose()
+	{
+		myDisposed = true;
+
+		clear();
+	}
+}
@@ -0,0 +1,143 @@
+package org.jetbrains.plugins.terminal.impl;
+
+import consulo.application.util.concurrent.AppExecutorUtil;
+import consulo.execution.terminal.TerminalSession;
+import consulo.execution.terminal.TerminalSessionFactory;
+import consulo.project.Project;
+import jakarta.annotation.Nonnull;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Creates local terminal sessions and finds their shell processes. May be called from any thread.
+ * Shell process is reported by the shell itself after session is created, so starter doesn't wait for it.
+ * <p>
+ * Sessions of all projects are started on application pool, at most {@link TerminalOptionsProvider#getParallelSessionStarts()}
+ * at once, so many tabs opened at once don't fork all their shells together. Other starts wait in one queue, and the limit
+ * is read each time a start is dispatched, so its change applies to queued starts too. It limits concurrency, not thread count.
+ */
+final class TerminalSessionStarter
+{
+	private static final Object ourLock = new Object();
+	// guarded by ourLock
+	private static final Deque<Runnable> ourPendingStarts = new ArrayDeque<>();
+	private static int ourRunningStarts;
+
+	static final class StartedSession
+	{
+		private final TerminalSession mySession;
+		private final CompletableFuture<ProcessHandle> myProcess;
+		private final String myShellPath;
+
+		private StartedSession(TerminalSession session, CompletableFuture<ProcessHandle> process, String shellPath)
+		{
+			mySession = session;
+			myProcess = process;
+			myShellPath = shellPath;
+		}
+
+		@Nonnull
+		TerminalSession getSession()
+		{
+			return mySession;
+		}
+
+		/**
+		 * @return shell process, which completes shortly after session is started, with null if it can't be determined
+		 */
+		@Nonnull
+		CompletableFuture<ProcessHandle> getProcess()
+		{
+			return myProcess;
+		}
+
+		@Nonnull
+		String getShellPath()
+		{
+			return myShellPath;
+		}
+	}
+
+	private TerminalSessionStarter()
+	{
+	}
+
+	@Nonnull
+	static CompletableFuture<StartedSession> startAsync(@Nonnull Project project, @Nonnull String workDirectory, @Nonnull String shellPath)
+	{
+		CompletableFuture<StartedSession> result = new CompletableFuture<>();
+		synchronized(ourLock)
+		{
+			ourPendingStarts.addLast(() ->
+			{
+				try
+				{
+					result.complete(start(project, workDirectory, shellPath));
+				}
+				catch(Throwable e)
+				{
+					result.completeExceptionally(e);
+				}
+			});
+		}
+		dispatch();
+		return result;
+	}
+
+	/**
+	 * Runs queued starts while count of running ones is below current limit
+	 */
+	private static void dispatch()
+	{
+		int limit = TerminalOptionsProvider.getInstance().getParallelSessionStarts();
+
+		List<Runnable> starts = new ArrayList<>();
+		synchronized(ourLock)
+		{
+			while(ourRunningStarts < limit && !ourPendingStarts.isEmpty())
+			{
+				starts.add(ourPendingStarts.removeFirst());
+				ourRunningStarts++;
+			}
+		}
+
+		for(Runnable start : starts)
+		{
+			AppExecutorUtil.getAppExecutorService().execute(() ->
+			{
+				try
+				{
+					start.run();
+				}
+				finally
+				{
+					synchronized(ourLock)
+					{
+						ourRunningStarts--;
+					}
+					dispatch();
+				}
+			});
+		}
+	}
+
+	@Nonnull
+	static StartedSession start(@Nonnull Project project, @Nonnull String workDirectory, @Nonnull String shellPath)
+	{
+		TerminalSessionFactory sessionFactory = project.getApplication().getInstance(TerminalSessionFactory.class);
+
+		TerminalShellLauncher.Launch launch = TerminalShellLauncher.prepare(shellPath);
+
+		// directory of tab restored from previous IDE session may be deleted since then
+		String directory = new File(workDirectory).isDirectory() ? workDirectory : TerminalView.currentProjectFolder(project);
+
+		TerminalSession session = sessionFactory.createLocal("Local", directory, launch::getLaunchPath);
+
+		return new StartedSession(session, launch.awaitProcess(), shellPath);
+	}
+}
@@ -0,0 +1,352 @@
+package org.jetbrains.plugins.terminal.impl;
+
+import consulo.annotation.component.ComponentScope;
+import consulo.annotation.component.ServiceAPI;
+import consulo.annotation.component.ServiceImpl;
+import consulo.application.Application;
+import consulo.application.util.SystemInfo;
+import consulo.application.util.concurrent.AppExecutorUtil;
+import consulo.logging.Logger;
+import consulo.platform.Platform;
+import consulo.util.lang.StringUtil;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import jakarta.inject.Singleton;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Finds shells installed in system. Scans /etc/shells, PATH and common install locations in background,
+ * and keeps found executable shells with their versions.
+ * <p>
+ * Readers never touch file system: they get last scan result. Scan is repeated when /etc/shells or any
+ * scanned directory was modified since previous scan.
+ */
+@Singleton
+@ServiceAPI(ComponentScope.APPLICATION)
+@ServiceImpl
+public class TerminalShellDiscovery
+{
+	public static final class Shell
+	{
+		private final String myPath;
+		private final String myVersion;
+
+		private Shell(@Nonnull String path, @Nullable String version)
+		{
+			myPath = path;
+			myVersion = version;
+		}
+
+		@Nonnull
+		public String getPath()
+		{
+			return myPath;
+		}
+
+		@Nullable
+		public String getVersion()
+		{
+			return myVersion;
+		}
+
+		@Override
+		public String toString()
+		{
+			return myVersion == null ? myPath : myPath + " (" + myVersion + ")";
+		}
+	}
+
+	private static final class Result
+	{
+		private final List<Shell> myShells;
+		private final String myDefaultShellPath;
+		private final Map<Path, Long> myModificationStamps;
+
+		private Result(List<Shell> shells, String defaultShellPath, Map<Path, Long> modificationStamps)
+		{
+			myShells = shells;
+			myDefaultShellPath = defaultShellPath;
+			myModificationStamps = modificationStamps;
+		}
+	}
+
+	private static final Logger LOG = Logger.getInstance(TerminalShellDiscovery.class);
+
+	private static final long CHECK_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+	private static final long VERSION_TIMEOUT_SECONDS = 5;
+
+	private static final Set<String> UNIX_SHELL_NAMES = Set.of("bash", "zsh", "fish", "sh", "dash", "ksh", "mksh", "tcsh", "csh", "nu", "pwsh", "elvish", "xonsh");
+	private static final Set<String> VERSIONED_SHELL_NAMES = Set.of("bash", "zsh", "fish", "nu", "pwsh", "elvish", "xonsh");
+	private static final List<String> UNIX_DIRECTORIES = Arrays.asList("/bin", "/usr/bin", "/usr/local/bin", "/opt/homebrew/bin", "/opt/local/bin", "/snap/bin");
+	private static final List<String> WINDOWS_SHELL_NAMES = Arrays.asList("pwsh.exe", "powershell.exe", "cmd.exe", "bash.exe", "wsl.exe");
+
+	private final ExecutorService myExecutor = AppExecutorUtil.createBoundedApplicationPoolExecutor("Terminal Shell Discovery", 1);
+	private final AtomicBoolean myScanScheduled = new AtomicBoolean();
+
+	private final CompletableFuture<List<Shell>> myFirstScan = new CompletableFuture<>();
+
+	private volatile Result myResult;
+	private volatile long myLastCheckTime;
+	private volatile String myInitialDefaultShellPath;
+
+	@Nonnull
+	public static TerminalShellDiscovery getInstance()
+	{
+		return Application.get().getInstance(TerminalShellDiscovery.class);
+	}
+
+	/**
+	 * @return shells found by first scan, which is started if needed. Completes with empty list if scan fails.
+	 * Later rescans are not reported
+	 */
+	@Nonnull
+	public CompletableFuture<List<Shell>> getShellsAsync()
+	{
+		scheduleCheck();
+		return myFirstScan;
+	}
+
+	/**
+	 * @return user shell from $SHELL if it's executable, otherwise system default shell
+	 */
+	@Nonnull
+	public String getDefaultShellPath()
+	{
+		scheduleCheck();
+		return peekDefaultShellPath();
+	}
+
+	/**
+	 * @return same as {@link #getDefaultShellPath()}, but doesn't start scan, e.g. while state is loaded
+	 */
+	@Nonnull
+	public String peekDefaultShellPath()
+	{
+		Result result = myResult;
+		if(result != null)
+		{
+			return result.myDefaultShellPath;
+		}
+
+		// until first scan is finished, default is checked once, so it doesn't differ from the one found by scan
+		String defaultShellPath = myInitialDefaultShellPath;
+		if(defaultShellPath == null)
+		{
+			defaultShellPath = findDefaultShellPath();
+			myInitialDefaultShellPath = defaultShellPath;
+		}
+		return defaultShellPath;
+	}
+
+	private void scheduleCheck()
+	{
+		long now = System.currentTimeMillis();
+		if(myResult != null && now - myLastCheckTime < CHECK_INTERVAL_MILLIS)
+		{
+			return;
+		}
+
+		if(!myScanScheduled.compareAndSet(false, true))
+		{
+			return;
+		}
+
+		myLastCheckTime = now;
+		myExecutor.execute(() ->
+		{
+			try
+			{
+				Result result = myResult;
+				if(result == null || isModified(result.myModificationStamps))
+				{
+					result = scan();
+					myResult = result;
+				}
+				myFirstScan.complete(result.myShells);
+			}
+			catch(Throwable e)
+			{
+				LOG.warn(e);
+			}
+			finally
+			{
+				myFirstScan.complete(Collections.emptyList());
+				myScanScheduled.set(false);
+			}
+		});
+	}
+
+	@Nonnull
+	private static String findDefaultShellPath()
+	{
+		String shell = Platform.current().os().getEnvironmentVariable("SHELL");
+		if(!StringUtil.isEmptyOrSpaces(shell) && new File(shell).canExecute())
+		{
+			return shell;
+		}
+		return SystemInfo.isUnix ? "/bin/bash" : "cmd.exe";
+	}
+
+	@Nonnull
+	private static Result scan()
+	{
+		Map<Path, Long> modificationStamps = new LinkedHashMap<>();
+		Set<String> candidates = new LinkedHashSet<>();
+
+		List<String> directories = new ArrayList<>();
+		String pathVariable = Platform.current().os().getEnvironmentVariable("PATH");
+		if(pathVariable != null)
+		{
+			directories.addAll(StringUtil.split(pathVariable, File.pathSeparator));
+		}
+
+		if(SystemInfo.isUnix)
+		{
+			Path etcShells = Paths.get("/etc/shells");
+			modificationStamps.put(etcShells, modificationStamp(etcShells));
+			try
+			{
+				for(String line : Files.readAllLines(etcShells, StandardCharsets.UTF_8))
+				{
+					line = line.trim();
+					if(line.startsWith("/"))
+					{
+						candidates.add(line);
+					}
+				}
+			}
+			catch(IOException ignored)
+			{
+			}
+
+			directories.addAll(UNIX_DIRECTORIES);
+		}
+
+		for(String directory : new LinkedHashSet<>(directories))
+		{
+			Path path = Paths.get(directory);
+			if(!Files.isDirectory(path))
+			{
+				continue;
+			}
+
+			modificationStamps.put(path, modificationStamp(path));
+			for(String name : SystemInfo.isUnix ? UNIX_SHELL_NAMES : WINDOWS_SHELL_NAMES)
+			{
+				candidates.add(path.resolve(name).toString());
+			}
+		}
+
+		List<Shell> shells = new ArrayList<>();
+		Set<Path> realPaths = new LinkedHashSet<>();
+		for(String candidate : candidates)
+		{
+			Path path = Paths.get(candidate);
+			if(!Files.isRegularFile(path) || !Files.isExecutable(path))
+			{
+				continue;
+			}
+
+			// same shell is often available by several links, e.g. /bin/bash and /usr/bin/bash
+			try
+			{
+				if(!realPaths.add(path.toRealPath()))
+				{
+					continue;
+				}
+			}
+			catch(IOException e)
+			{
+				continue;
+			}
+
+			shells.add(new Shell(candidate, readVersion(candidate)));
+		}
+
+		return new Result(Collections.unmodifiableList(shells), findDefaultShellPath(), modificationStamps);
+	}
+
+	@Nullable
+	private static String readVersion(@Nonnull String shellPath)
+	{
+		String fileName = StringUtil.trimEnd(new File(shellPath).getName(), ".exe");
+		if(!VERSIONED_SHELL_NAMES.contains(fileName))
+		{
+			return null;
+		}
+
+		Process process = null;
+		try
+		{
+			process = new ProcessBuilder(shellPath, "--version").redirectErrorStream(true).redirectInput(ProcessBuilder.Redirect.PIPE).start();
+			process.getOutputStream().close();
+			if(!process.waitFor(VERSION_TIMEOUT_SECONDS, TimeUnit.SECONDS))
+			{
+				return null;
+			}
+
+			String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8).trim();
+			int lineEnd = output.indexOf('\n');
+			String firstLine = (lineEnd < 0 ? output : output.substring(0, lineEnd)).trim();
+			return firstLine.isEmpty() ? null : firstLine;
+		}
+		catch(IOException e)
+		{
+			return null;
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		finally
+		{
+			if(process != null && process.isAlive())
+			{
+				process.destroyForcibly();
+			}
+		}
+	}
+
+	private static boolean isModified(@Nonnull Map<Path, Long> modificationStamps)
+	{
+		for(Map.Entry<Path, Long> entry : modificationStamps.entrySet())
+		{
+			if(modificationStamp(entry.getKey()) != entry.getValue())
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static long modificationStamp(@Nonnull Path path)
+	{
+		try
+		{
+			return Files.getLastModifiedTime(path).toMillis();
+		}
+		catch(IOException e)
+		{
+			return -1;
+		}
+	}
+}
@@ -0,0 +1,259 @@
+package org.jetbrains.plugins.terminal.impl;
+
+import consulo.annotation.component.ComponentScope;
+import consulo.annotation.component.ServiceAPI;
+import consulo.annotation.component.ServiceImpl;
+import consulo.application.Application;
+import consulo.application.util.SystemInfo;
+import consulo.application.util.concurrent.AppExecutorUtil;
+import consulo.logging.Logger;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import jakarta.inject.Singleton;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Captures environment which login shell builds from its rc files, and starts later sessions as non-login shells with
+ * that environment, so login rc files are not evaluated on every session start.
+ * <p>
+ * Captured variables are exported by launcher script, see {@link TerminalShellLauncher}.
+ * Captured environment is keyed by modification time and hash of shell rc files, and is captured again when any of them changes.
+ */
+@Singleton
+@ServiceAPI(ComponentScope.APPLICATION)
+@ServiceImpl
+public class TerminalShellEnvironment
+{
+	private static final Logger LOG = Logger.getInstance(TerminalShellEnvironment.class);
+
+	private static final String ENV_MARKER = "__TERMINAL_ENV_START__";
+	private static final long CAPTURE_TIMEOUT_SECONDS = 30;
+
+	private static final Pattern VARIABLE_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+	// variables which are set by terminal itself, or are specific to process which captured environment
+	private static final Set<String> SKIPPED_VARIABLES = Set.of("_", "PWD", "OLDPWD", "SHLVL", "TERM", "TERM_PROGRAM", "TERMINAL_EMULATOR", "COLORTERM", "COLUMNS", "LINES");
+
+	private static final List<String> RC_FILES = Arrays.asList("/etc/profile", "/etc/bash.bashrc", "/etc/zshenv", "/etc/zprofile", "/etc/zshrc", "/etc/zsh/zshenv", "/etc/zsh/zprofile", "/etc/zsh/zshrc",
+			"~/.profile", "~/.bash_profile", "~/.bash_login", "~/.bashrc", "~/.zshenv", "~/.zprofile", "~/.zshrc", "~/.zlogin", "~/.config/fish/config.fish");
+
+	private static final class Snapshot
+	{
+		private final String myKey;
+		private final Map<String, String> myEnvironment;
+
+		private Snapshot(String key, Map<String, String> environment)
+		{
+			myKey = key;
+			myEnvironment = environment;
+		}
+	}
+
+	private final ExecutorService myExecutor = AppExecutorUtil.createBoundedApplicationPoolExecutor("Terminal Shell Environment", 1);
+	private final Map<String, Snapshot> mySnapshots = new ConcurrentHashMap<>();
+	private final Set<String> myCapturing = ConcurrentHashMap.newKeySet();
+
+	@Nonnull
+	public static TerminalShellEnvironment getInstance()
+	{
+		return Application.get().getInstance(TerminalShellEnvironment.class);
+	}
+
+	/**
+	 * @return environment captured from login shell, or null if fast start is disabled or there is no valid captured environment yet.
+	 * In later case environment is captured in background. Reads rc files, so must not be called from UI thread
+	 */
+	@Nullable
+	public Map<String, String> getEnvironment(@Nonnull String shellPath)
+	{
+		if(!SystemInfo.isUnix || !TerminalOptionsProvider.getInstance().isFastStart())
+		{
+			return null;
+		}
+
+		String key = computeKey(shellPath);
+		Snapshot snapshot = mySnapshots.get(shellPath);
+		if(snapshot != null && snapshot.myKey.equals(key))
+		{
+			return snapshot.myEnvironment;
+		}
+
+		captureAsync(shellPath);
+		return null;
+	}
+
+	/**
+	 * Drops all captured environments and captures environment of current shell again
+	 */
+	public void refresh()
+	{
+		mySnapshots.clear();
+
+		if(TerminalOptionsProvider.getInstance().isFastStart())
+		{
+			captureAsync(TerminalOptionsProvider.getInstance().getShellPathOrDefault());
+		}
+	}
+
+	private void captureAsync(@Nonnull String shellPath)
+	{
+		if(!myCapturing.add(shellPath))
+		{
+			return;
+		}
+
+		myExecutor.execute(() ->
+		{
+			try
+			{
+				String key = computeKey(shellPath);
+				Map<String, String> environment = capture(shellPath);
+				if(environment != null)
+				{
+					mySnapshots.put(shellPath, new Snapshot(key, environment));
+				}
+			}
+			catch(IOException e)
+			{
+				LOG.warn("Can't capture environment of " + shellPath, e);
+			}
+			finally
+			{
+				myCapturing.remove(shellPath);
+			}
+		});
+	}
+
+	@Nullable
+	private static Map<String, String> capture(@Nonnull String shellPath) throws IOException
+	{
+		String command = "printf '%s' " + ENV_MARKER + "; env -0 2>/dev/null || env";
+
+		// output goes to file, so processes left running by rc files can't keep capture waiting for end of stream
+		Path outputFile = Files.createTempFile("terminal-env", ".txt", PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+		try
+		{
+			Process process = new ProcessBuilder(shellPath, "-l", "-i", "-c", command)
+					.redirectOutput(outputFile.toFile())
+					.redirectError(ProcessBuilder.Redirect.DISCARD)
+					.start();
+			process.getOutputStream().close();
+
+			try
+			{
+				if(!process.waitFor(CAPTURE_TIMEOUT_SECONDS, TimeUnit.SECONDS))
+				{
+					process.destroyForcibly();
+					LOG.warn("Capturing environment of " + shellPath + " timed out");
+					return null;
+				}
+			}
+			catch(InterruptedException e)
+			{
+				process.destroyForcibly();
+				Thread.currentThread().interrupt();
+				return null;
+			}
+
+			return parseEnvironment(shellPath, Files.readAllBytes(outputFile));
+		}
+		finally
+		{
+			Files.deleteIfExists(outputFile);
+		}
+	}
+
+	@Nullable
+	private static Map<String, String> parseEnvironment(@Nonnull String shellPath, @Nonnull byte[] output)
+	{
+		String text = new String(output, StandardCharsets.UTF_8);
+		int markerIndex = text.lastIndexOf(ENV_MARKER);
+		if(markerIndex < 0)
+		{
+			LOG.warn("Can't capture environment of " + shellPath + ", no output");
+			return null;
+		}
+
+		String envText = text.substring(markerIndex + ENV_MARKER.length());
+		String separator = envText.indexOf('\0') >= 0 ? "\0" : "\n";
+
+		Map<String, String> environment = new LinkedHashMap<>();
+		for(String entry : envText.split(separator))
+		{
+			int eq = entry.indexOf('=');
+			if(eq <= 0)
+			{
+				continue;
+			}
+
+			String name = entry.substring(0, eq);
+			if(VARIABLE_NAME.matcher(name).matches() && !SKIPPED_VARIABLES.contains(name))
+			{
+				environment.put(name, entry.substring(eq + 1));
+			}
+		}
+		return environment;
+	}
+
+	/**
+	 * @return key of shell environment, which changes when any of shell rc files is changed, created or deleted
+	 */
+	@Nonnull
+	private static String computeKey(@Nonnull String shellPath)
+	{
+		StringBuilder key = new StringBuilder(shellPath);
+		String home = System.getProperty("user.home");
+		for(String rcFile : RC_FILES)
+		{
+			Path path = Paths.get(rcFile.startsWith("~/") ? home + rcFile.substring(1) : rcFile);
+			key.append('|').append(rcFile);
+			try
+			{
+				if(Files.isRegularFile(path))
+				{
+					key.append(':').append(Files.getLastModifiedTime(path).toMillis()).append(':').append(hash(Files.readAllBytes(path)));
+				}
+			}
+			catch(IOException | SecurityException e)
+			{
+				key.append(":?");
+			}
+		}
+		return key.toString();
+	}
+
+	@Nonnull
+	private static String hash(@Nonnull byte[] content)
+	{
+		try
+		{
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+			StringBuilder builder = new StringBuilder();
+			for(byte b : digest)
+			{
+				builder.append(String.format("%02x", b));
+			}
+			return builder.toString();
+		}
+		catch(NoSuchAlgorithmException e)
+		{
+			return Integer.toHexString(Arrays.hashCode(content));
+		}
+	}
+}
@@ -0,0 +1,421 @@
+package org.jetbrains.plugins.terminal.impl;
+
+import consulo.application.util.SystemInfo;
+import consulo.application.util.concurrent.AppExecutorUtil;
+import consulo.container.boot.ContainerPathManager;
+import consulo.logging.Logger;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generates launcher scripts, which export environment captured by {@link TerminalShellEnvironment} and start shell
+ * with shell integration scripts. Launchers are named by hash of their content, so a launcher never changes once written.
+ * Each launch goes through its own wrapper script, which writes its pid to a file of the launch and execs the launcher,
+ * so the shell process of a session is known exactly, even if several sessions are started at once.
+ * <p>
+ * Launchers are executed as the user, so they are kept in a directory under IDE system directory, which must be owned
+ * by current user and be accessible only by them. Otherwise, or if launchers can't be executed from there, shell is started as is.
+ * <p>
+ * Shell integration marks prompts and commands with OSC 133 sequences and appends them to status file
+ * of the session, see {@link TerminalCommandIndex}. Launcher execs the shell, so status file is named by pid of the shell.
+ */
+final class TerminalShellLauncher
+{
+	private static final Logger LOG = Logger.getInstance(TerminalShellLauncher.class);
+
+	private static final String RESOURCE_DIRECTORY = "/shell-integration/";
+	// wrapper not executed for this long is considered abandoned by its session
+	private static final long STALE_LAUNCH_MILLIS = TimeUnit.HOURS.toMillis(1);
+	private static final Set<PosixFilePermission> PRIVATE_DIRECTORY_PERMISSIONS = PosixFilePermissions.fromString("rwx------");
+
+	private enum ShellType
+	{
+		BASH, ZSH, FISH
+	}
+
+	private TerminalShellLauncher()
+	{
+	}
+
+	/**
+	 * Started shell process, identified by pid which the wrapper script writes to a file of the launch before exec
+	 */
+	static final class Launch
+	{
+		private static final long PID_TIMEOUT_MILLIS = 5000;
+		private static final long PID_POLL_MILLIS = 20;
+
+		private final String myLaunchPath;
+		private final Path myWrapper;
+		private final Path myPidFile;
+
+		private Launch(@Nonnull String launchPath, @Nullable Path wrapper, @Nullable Path pidFile)
+		{
+			myLaunchPath = launchPath;
+			myWrapper = wrapper;
+			myPidFile = pidFile;
+		}
+
+		/**
+		 * @return path, which session must start as a shell
+		 */
+		@Nonnull
+		String getLaunchPath()
+		{
+			return myLaunchPath;
+		}
+
+		/**
+		 * Waits in background until wrapper reports pid of the shell. Must be called after session is created
+		 *
+		 * @return shell process, which is null if shell is started without wrapper, or didn't report its pid in time
+		 */
+		@Nonnull
+		CompletableFuture<ProcessHandle> awaitProcess()
+		{
+			if(myPidFile == null)
+			{
+				return CompletableFuture.completedFuture(null);
+			}
+
+			CompletableFuture<ProcessHandle> result = new CompletableFuture<>();
+			long deadline = System.currentTimeMillis() + PID_TIMEOUT_MILLIS;
+			ScheduledFuture<?> polling = AppExecutorUtil.getAppScheduledExecutorService().scheduleWithFixedDelay(() -> readPid(result, deadline), 0, PID_POLL_MILLIS, TimeUnit.MILLISECONDS);
+			result.whenComplete((process, error) -> polling.cancel(false));
+			return result;
+		}
+
+		private void readPid(@Nonnull CompletableFuture<ProcessHandle> result, long deadline)
+		{
+			if(result.isDone())
+			{
+				return;
+			}
+
+			try
+			{
+				String pid = Files.isRegularFile(myPidFile) ? new String(Files.readAllBytes(myPidFile), StandardCharsets.UTF_8).trim() : "";
+				if(pid.isEmpty())
+				{
+					if(System.currentTimeMillis() > deadline)
+					{
+						// session may still execute wrapper later, so files of the launch are left to sweeping, see prepare()
+						LOG.warn("Shell started by " + myWrapper + " didn't report its pid");
+						result.complete(null);
+					}
+					return;
+				}
+
+				// wrapper has already been executed
+				deleteQuietly(myPidFile);
+				deleteQuietly(myWrapper);
+
+				ProcessHandle process = ProcessHandle.of(Long.parseLong(pid)).orElse(null);
+				result.complete(process != null && process.isAlive() && TerminalProcessUtil.isDescendantOfIde(process) ? process : null);
+			}
+			catch(IOException | RuntimeException e)
+			{
+				LOG.warn("Can't read pid of shell started by " + myWrapper, e);
+				result.complete(null);
+			}
+		}
+	}
+
+	/**
+	 * Prepares launch of shell. Shell is started through a wrapper, which reports pid of the shell,
+	 * and launcher, which exports captured environment and enables shell integration, if any of them is needed.
+	 * Wrappers, which were not executed long ago, are deleted here. Must not be called from UI thread
+	 */
+	@Nonnull
+	static Launch prepare(@Nonnull String shellPath)
+	{
+		if(!SystemInfo.isUnix)
+		{
+			return new Launch(shellPath, null, null);
+		}
+
+		try
+		{
+			Path directory = getDirectory();
+			if(directory == null)
+			{
+				return new Launch(shellPath, null, null);
+			}
+
+			deleteStaleLaunches(directory);
+
+			String token = UUID.randomUUID().toString();
+			Path pidFile = directory.resolve("pid-" + token);
+			Path wrapper = directory.resolve("start-" + token + ".sh");
+
+			// arguments are passed through, so shell started as is gets options of the session
+			String script = "#!/bin/sh\n" +
+					"printf '%s' \"$$\" > " + quote(pidFile.toString()) + "\n" +
+					"exec " + quote(getTargetPath(directory, shellPath)) + " \"$@\"\n";
+			writeAtomically(wrapper, script.getBytes(StandardCharsets.UTF_8));
+
+			if(!Files.isExecutable(wrapper))
+			{
+				// e.g. system directory is on a noexec mount
+				LOG.warn("Launcher " + wrapper + " can't be executed, starting " + shellPath + " as is");
+				deleteQuietly(wrapper);
+				return new Launch(shellPath, null, null);
+			}
+			return new Launch(wrapper.toString(), wrapper, pidFile);
+		}
+		catch(IOException e)
+		{
+			LOG.warn("Can't write launcher of " + shellPath, e);
+			return new Launch(shellPath, null, null);
+		}
+	}
+
+	/**
+	 * @return path to launcher, which exports captured environment and enables shell integration, or {@code shellPath} if none of them is needed
+	 */
+	@Nonnull
+	private static String getTargetPath(@Nonnull Path directory, @Nonnull String shellPath) throws IOException
+	{
+		Map<String, String> environment = TerminalShellEnvironment.getInstance().getEnvironment(shellPath);
+		ShellType shellType = TerminalOptionsProvider.getInstance().isShellIntegration() ? getShellType(shellPath) : null;
+		if(environment == null && shellType == null)
+		{
+			return shellPath;
+		}
+
+		if(shellType != null)
+		{
+			writeScripts(directory);
+		}
+		return writeLauncher(directory, buildLauncher(directory, shellPath, environment, shellType)).toString();
+	}
+
+	/**
+	 * @return file, to which shell integration of shell with given pid reports prompts and commands
+	 */
+	@Nonnull
+	static Path getStatusFile(long pid)
+	{
+		return getDirectoryPath().resolve("status-" + pid);
+	}
+
+	@Nullable
+	private static ShellType getShellType(@Nonnull String shellPath)
+	{
+		String name = Paths.get(shellPath).getFileName().toString().toLowerCase(Locale.ROOT);
+		switch(name)
+		{
+			case "bash":
+				return ShellType.BASH;
+			case "zsh":
+				return ShellType.ZSH;
+			case "fish":
+				return ShellType.FISH;
+			default:
+				return null;
+		}
+	}
+
+	@Nonnull
+	private static String buildLauncher(@Nonnull Path directory, @Nonnull String shellPath, @Nullable Map<String, String> environment, @Nullable ShellType shellType)
+	{
+		StringBuilder script = new StringBuilder("#!/bin/sh\n");
+		if(environment != null)
+		{
+			for(Map.Entry<String, String> entry : environment.entrySet())
+			{
+				script.append("export ").append(entry.getKey()).append('=').append(quote(entry.getValue())).append('\n');
+			}
+		}
+
+		// without captured environment shell starts as login shell, as it does without launcher
+		boolean login = environment == null;
+		String shell = quote(shellPath);
+		if(shellType == null)
+		{
+			// arguments are dropped - login options are exactly what fast start avoids
+			script.append("exec ").append(shell).append(" -i\n");
+			return script.toString();
+		}
+
+		script.append("export TERMINAL_STATUS_FILE=").append(quote(directory.toString())).append("/status-$$\n");
+		// status file records command lines, keep it private regardless of shell umask
+		script.append("(umask 077; : > \"$TERMINAL_STATUS_FILE\")\n");
+		switch(shellType)
+		{
+			case BASH:
+				if(login)
+				{
+					script.append("export TERMINAL_LOGIN_SHELL=1\n");
+				}
+				script.append("exec ").append(shell).append(" --rcfile ").append(quote(directory.resolve("bash-integration.bash").toString())).append(" -i\n");
+				break;
+			case ZSH:
+				String zdotdir = quote(directory.resolve("zsh").toString());
+				script.append("export TERMINAL_USER_ZDOTDIR=\"${ZDOTDIR-}\"\n");
+				script.append("export TERMINAL_INTEGRATION_DIR=").append(zdotdir).append('\n');
+				script.append("export ZDOTDIR=").append(zdotdir).append('\n');
+				script.append("exec ").append(shell).append(login ? " -l -i\n" : " -i\n");
+				break;
+			case FISH:
+				String initCommand = "source " + quote(directory.resolve("fish-integration.fish").toString());
+				script.append("exec ").append(shell).append(login ? " -l -i" : " -i").append(" --init-command ").append(quote(initCommand)).append('\n');
+				break;
+		}
+		return script.toString();
+	}
+
+	/**
+	 * Writes integration scripts, or rewrites them if their content differs from expected one. Called before each launch
+	 */
+	private static void writeScripts(@Nonnull Path directory) throws IOException
+	{
+		copyScript("bash-integration.bash", directory.resolve("bash-integration.bash"));
+		copyScript("fish-integration.fish", directory.resolve("fish-integration.fish"));
+
+		Path zshDirectory = directory.resolve("zsh");
+		Files.createDirectories(zshDirectory);
+		copyScript("zsh/zshenv.zsh", zshDirectory.resolve(".zshenv"));
+		copyScript("zsh/zprofile.zsh", zshDirectory.resolve(".zprofile"));
+		copyScript("zsh/zshrc.zsh", zshDirectory.resolve(".zshrc"));
+	}
+
+	private static void copyScript(@Nonnull String resource, @Nonnull Path target) throws IOException
+	{
+		try (InputStream stream = TerminalShellLauncher.class.getResourceAsStream(RESOURCE_DIRECTORY + resource))
+		{
+			if(stream == null)
+			{
+				throw new IOException("Missing " + resource);
+			}
+
+			byte[] content = stream.readAllBytes();
+			if(!Files.isRegularFile(target) || !Arrays.equals(content, Files.readAllBytes(target)))
+			{
+				writeAtomically(target, content);
+			}
+		}
+	}
+
+	@Nonnull
+	private static Path writeLauncher(@Nonnull Path directory, @Nonnull String script) throws IOException
+	{
+		Path launcher = directory.resolve("launcher-" + Integer.toHexString(script.hashCode()) + ".sh");
+		byte[] content = script.getBytes(StandardCharsets.UTF_8);
+		if(!Files.isExecutable(launcher) || !Arrays.equals(content, Files.readAllBytes(launcher)))
+		{
+			writeAtomically(launcher, content);
+		}
+		return launcher;
+	}
+
+	private static void writeAtomically(@Nonnull Path target, @Nonnull byte[] content) throws IOException
+	{
+		Path tempFile = Files.createTempFile(target.getParent(), "launcher", ".tmp", PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+		Files.write(tempFile, content);
+		Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * @return directory of launchers, or null if it can't be created or may be modified by other users
+	 */
+	@Nullable
+	private static Path getDirectory() throws IOException
+	{
+		Path directory = getDirectoryPath();
+		if(!Files.exists(directory, LinkOption.NOFOLLOW_LINKS))
+		{
+			Files.createDirectories(directory.getParent());
+			try
+			{
+				Files.createDirectory(directory, PosixFilePermissions.asFileAttribute(PRIVATE_DIRECTORY_PERMISSIONS));
+			}
+			catch(FileAlreadyExistsException ignored)
+			{
+				// created concurrently, checked below
+			}
+		}
+
+		PosixFileAttributes attributes = Files.readAttributes(directory, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+		UserPrincipal currentUser = directory.getFileSystem().getUserPrincipalLookupService().lookupPrincipalByName(System.getProperty("user.name"));
+		if(!attributes.isDirectory() || !attributes.owner().equals(currentUser) || !attributes.permissions().equals(PRIVATE_DIRECTORY_PERMISSIONS))
+		{
+			LOG.warn("Launcher directory " + directory + " is not a directory owned by current user with permissions 0700, shells are started as is");
+			return null;
+		}
+		return directory;
+	}
+
+	@Nonnull
+	private static Path getDirectoryPath()
+	{
+		return Paths.get(ContainerPathManager.get().getSystemPath(), "terminal");
+	}
+
+	private static void deleteStaleLaunches(@Nonnull Path directory)
+	{
+		long staleTimeMillis = System.currentTimeMillis() - STALE_LAUNCH_MILLIS;
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "{start-*.sh,pid-*}"))
+		{
+			for(Path file : files)
+			{
+				try
+				{
+					if(Files.getLastModifiedTime(file, LinkOption.NOFOLLOW_LINKS).toMillis() < staleTimeMillis)
+					{
+						Files.deleteIfExists(file);
+					}
+				}
+				catch(IOException ignored)
+				{
+					// deleted concurrently
+				}
+			}
+		}
+		catch(IOException | DirectoryIteratorException e)
+		{
+			LOG.debug("Can't delete stale launches in " + directory, e);
+		}
+	}
+
+	private static void deleteQuietly(@Nonnull Path file)
+	{
+		try
+		{
+			Files.deleteIfExists(file);
+		}
+		catch(IOException | SecurityException ignored)
+		{
+		}
+	}
+
+	@Nonnull
+	private static String quote(@Nonnull String value)
+	{
+		return "'" + value.replace("'", "'\\''") + "'";
+	}
+}
@@ -0,0 +1,363 @@
+package org.jetbrains.plugins.terminal.impl;
+
+import consulo.disposer.Disposable;
+import consulo.ui.Component;
+import consulo.ui.layout.WrappedLayout;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Session state of one terminal tab. Tab component is a placeholder until session is started,
+ * and then is replaced by terminal console. Idle session may be hibernated, then tab becomes placeholder again.
+ */
+final class TerminalTab
+{
+	private volatile String myWorkDirectory;
+	private final WrappedLayout myLayout;
+	private final Disposable myDisposable;
+
+	private volatile ProcessHandle myProcess;
+	private volatile TerminalCommandIndex myCommandIndex;
+	private boolean myStarted;
+	private Disposable mySessionDisposable;
+	private Disposable myViewDisposable;
+	private volatile long myLastActivityMillis = System.currentTimeMillis();
+
+	private volatile long mySpawnLatencyMillis = -1;
+	private volatile long myStartTimeMillis = -1;
+	private volatile boolean myFromPool;
+
+	private volatile double myCpuPercent;
+	private volatile long myRssBytes = -1;
+	private volatile long myOutputBytesPerSecond = -1;
+
+	// flood protection state, accessed from UI thread
+	private Component myConsoleComponent;
+	private int myFloodSamples;
+	private boolean myFlooding;
+	private boolean myFloodOverridden;
+	private long myFloodSkippedBytes;
+	// written by sampler, taken by flood protection
+	private final AtomicLong myUncountedOutputBytes = new AtomicLong();
+
+	TerminalTab(@Nonnull String workDirectory, @Nonnull WrappedLayout layout, @Nonnull Disposable disposable)
+	{
+		myWorkDirectory = workDirectory;
+		myLayout = layout;
+		myDisposable = disposable;
+	}
+
+	/**
+	 * @return directory, in which the session was started, or will be started
+	 */
+	@Nonnull
+	String getWorkDirectory()
+	{
+		return myWorkDirectory;
+	}
+
+	/**
+	 * @return current directory of shell if it can be determined, otherwise directory where session was started
+	 */
+	@Nonnull
+	String getCurrentDirectory()
+	{
+		ProcessHandle process = myProcess;
+		String currentDirectory = process == null ? null : TerminalProcessUtil.getWorkingDirectory(process);
+		return currentDirectory == null ? myWorkDirectory : currentDirectory;
+	}
+
+	/**
+	 * @return shell from terminal settings, which is started by next session of the tab
+	 */
+	@Nonnull
+	String getShellPath()
+	{
+		return TerminalOptionsProvider.getInstance().getShellPathOrDefault();
+	}
+
+	@Nonnull
+	WrappedLayout getLayout()
+	{
+		return myLayout;
+	}
+
+	/**
+	 * @return disposable of tab content, which terminates session when disposed
+	 */
+	@Nonnull
+	Disposable getDisposable()
+	{
+		return myDisposable;
+	}
+
+	@Nullable
+	ProcessHandle getProcess()
+	{
+		return myProcess;
+	}
+
+	void setProcess(@Nullable ProcessHandle process)
+	{
+		myProcess = process;
+		myCommandIndex = process == null ? null : new TerminalCommandIndex(TerminalShellLauncher.getStatusFile(process.pid()));
+	}
+
+	/**
+	 * @return index of commands reported by shell integration, or null if shell process is unknown
+	 */
+	@Nullable
+	TerminalCommandIndex getCommandIndex()
+	{
+		return myCommandIndex;
+	}
+
+	/**
+	 * @return true if shell waits at prompt and has no running commands
+	 */
+	boolean isIdle(@Nonnull Set<Long> parentPids)
+	{
+		ProcessHandle process = myProcess;
+		if(process == null || !process.isAlive())
+		{
+			return false;
+		}
+
+		if(!TerminalProcessUtil.isIdle(process, parentPids))
+		{
+			return false;
+		}
+
+		// shell may not report command starts (e.g. bash before 4.4), so prompt state only refines process check,
+		// e.g. shell builtin like 'read' has no child processes, but is not at prompt
+		TerminalCommandIndex commandIndex = myCommandIndex;
+		if(commandIndex != null)
+		{
+			commandIndex.update();
+			if(commandIndex.isAvailable())
+			{
+				return commandIndex.isAtPrompt();
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return true if session start was requested, false for inert placeholder tab
+	 */
+	boolean isStarted()
+	{
+		return myStarted;
+	}
+
+	void setStarted()
+	{
+		myStarted = true;
+	}
+
+	/**
+	 * @return disposable of current session, which terminates it when disposed, or null if session is not started
+	 */
+	@Nullable
+	Disposable getSessionDisposable()
+	{
+		return mySessionDisposable;
+	}
+
+	void setSessionDisposable(@Nonnull Disposable sessionDisposable)
+	{
+		mySessionDisposable = sessionDisposable;
+	}
+
+	/**
+	 * @return disposable of callbacks of terminal view, which shows the tab. It's disposed when tab is closed or moved to another project
+	 */
+	@Nullable
+	Disposable getViewDisposable()
+	{
+		return myViewDisposable;
+	}
+
+	void setViewDisposable(@Nonnull Disposable viewDisposable)
+	{
+		myViewDisposable = viewDisposable;
+	}
+
+	/**
+	 * Forgets terminated session. Tab becomes inert placeholder, which starts new session in given directory when selected
+	 */
+	void sessionHibernated(@Nonnull String workDirectory)
+	{
+		myWorkDirectory = workDirectory;
+		myProcess = null;
+		myCommandIndex = null;
+		myStarted = false;
+		mySessionDisposable = null;
+
+		myCpuPercent = 0;
+		myRssBytes = -1;
+		myOutputBytesPerSecond = -1;
+
+		myConsoleComponent = null;
+		myFloodSamples = 0;
+		myFlooding = false;
+		myFloodOverridden = false;
+		myUncountedOutputBytes.set(0);
+	}
+
+	/**
+	 * Records that session has running commands, see {@link #getIdleMillis()}
+	 */
+	void markActive()
+	{
+		myLastActivityMillis = System.currentTimeMillis();
+	}
+
+	/**
+	 * @return time since session had running commands, wrote output or reported a command or prompt
+	 */
+	long getIdleMillis()
+	{
+		long lastActivityMillis = myLastActivityMillis;
+		TerminalCommandIndex commandIndex = myCommandIndex;
+		if(commandIndex != null)
+		{
+			lastActivityMillis = Math.max(lastActivityMillis, commandIndex.getLastActivityMillis());
+		}
+		return System.currentTimeMillis() - lastActivityMillis;
+	}
+
+	/**
+	 * Records that session console is shown
+	 */
+	void sessionStarted(long spawnLatencyMillis, boolean fromPool)
+	{
+		mySpawnLatencyMillis = spawnLatencyMillis;
+		myFromPool = fromPool;
+		myStartTimeMillis = System.currentTimeMillis();
+		myLastActivityMillis = myStartTimeMillis;
+	}
+
+	/**
+	 * Records resource usage of shell process tree, see {@link TerminalProcessSampler}
+	 */
+	void setUsage(double cpuPercent, long rssBytes, long outputBytesPerSecond, long outputBytes)
+	{
+		myCpuPercent = cpuPercent;
+		myRssBytes = rssBytes;
+		myOutputBytesPerSecond = outputBytesPerSecond;
+		if(outputBytes > 0)
+		{
+			markActive();
+			myUncountedOutputBytes.addAndGet(outputBytes);
+		}
+	}
+
+	double getCpuPercent()
+	{
+		return myCpuPercent;
+	}
+
+	long getRssBytes()
+	{
+		return myRssBytes;
+	}
+
+	/**
+	 * @return estimated bytes per second written to terminal by shell and its child processes, or -1 if it's unknown.
+	 * It's an upper bound: all writes of processes, which have the terminal as stdout, are counted, including writes to files and pipes
+	 */
+	long getOutputBytesPerSecond()
+	{
+		return myOutputBytesPerSecond;
+	}
+
+	/**
+	 * @return console component, or null if session is not started yet
+	 */
+	@Nullable
+	Component getConsoleComponent()
+	{
+		return myConsoleComponent;
+	}
+
+	void setConsoleComponent(@Nonnull Component consoleComponent)
+	{
+		myConsoleComponent = consoleComponent;
+	}
+
+	/**
+	 * @return count of consecutive samples, in which output rate was above flood threshold
+	 */
+	int countFloodSample(boolean aboveThreshold)
+	{
+		myFloodSamples = aboveThreshold ? myFloodSamples + 1 : 0;
+		return myFloodSamples;
+	}
+
+	/**
+	 * Adds output written since previous call to skipped output, if flood is detected
+	 */
+	void countFloodOutput()
+	{
+		long outputBytes = myUncountedOutputBytes.getAndSet(0);
+		if(myFlooding)
+		{
+			myFloodSkippedBytes += outputBytes;
+		}
+	}
+
+	boolean isFlooding()
+	{
+		return myFlooding;
+	}
+
+	void setFlooding(boolean flooding)
+	{
+		if(flooding && !myFlooding)
+		{
+			myFloodSkippedBytes = 0;
+		}
+		myFlooding = flooding;
+		if(!flooding)
+		{
+			myFloodOverridden = false;
+		}
+	}
+
+	/**
+	 * @return true if user asked to show output during current flood
+	 */
+	boolean isFloodOverridden()
+	{
+		return myFloodOverridden;
+	}
+
+	void setFloodOverridden()
+	{
+		myFloodOverridden = true;
+	}
+
+	/**
+	 * @return estimated bytes written to terminal since flood was detected
+	 */
+	long getFloodSkippedBytes()
+	{
+		return myFloodSkippedBytes;
+	}
+
+	@Nonnull
+	TerminalSessionMetrics getMetrics(@Nonnull String tabName)
+	{
+		ProcessHandle process = myProcess;
+		TerminalCommandIndex commandIndex = myCommandIndex;
+		TerminalCommandIndex.Command lastCommand = commandIndex == null ? null : commandIndex.getLastCommand();
+		// command text is empty if shell doesn't know it, e.g. command was excluded from bash history
+		String lastCommandText = lastCommand == null || lastCommand.getText().isEmpty() ? null : lastCommand.getText();
+		return new TerminalSessionMetrics(tabName, getCurrentDirectory(), process == null ? -1 : process.pid(), mySpawnLatencyMillis, myFromPool, myStartTimeMillis, myCpuPercent, myRssBytes,
+				lastCommandText, lastCommand == null ? -1 : lastCommand.getExitCode());
+	}
+}
@@ -3,6 +3,7 @@ package org.jetbrains.plugins.terminal.impl;
 import consulo.annotation.component.ExtensionImpl;
 import consulo.application.dumb.DumbAware;
 import consulo.localize.LocalizeValue;
+import consulo.logging.Logger;
 import consulo.project.Project;
 import consulo.project.ui.wm.ToolWindowFactory;
 import consulo.project.ui.wm.ToolWindowManager;
@@ -15,12 +16,16 @@ import consulo.ui.image.Image;
 
 import jakarta.annotation.Nonnull;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * @author traff
  */
 @ExtensionImpl
 public class TerminalToolWindowFactory implements ToolWindowFactory, DumbAware
 {
+	private static final Logger LOG = Logger.getInstance(TerminalToolWindowFactory.class);
+
 	public static final String TOOL_WINDOW_ID = "Terminal";
 
 	@Nonnull
@@ -60,20 +65,33 @@ public class TerminalToolWindowFactory implements ToolWindowFactory, DumbAware
 	@Override
 	public void createToolWindowContent(@Nonnull Project project, @Nonnull ToolWindow toolWindow)
 	{
+		long startTime = System.nanoTime();
+
 		TerminalView terminalView = TerminalView.getInstance(project);
 		terminalView.initTerminal(toolWindow);
 
 		project.getMessageBus().connect(project).subscribe(ToolWindowManagerListener.class, new ToolWindowManagerListener()
 		{
+			private boolean myVisible = toolWindow.isVisible();
+
 			@Override
 			public void stateChanged(ToolWindowManager manager)
 			{
+				// called for any tool window change, react only if terminal visibility changed
 				boolean visible = toolWindow.isVisible();
-				if(visible && toolWindow.getContentManager().getContentCount() == 0)
+				if(visible == myVisible)
 				{
-					terminalView.addNewSession(toolWindow, null);
+					return;
+				}
+
+				myVisible = visible;
+				if(visible)
+				{
+					terminalView.toolWindowShown(toolWindow);
 				}
 			}
 		});
+
+		LOG.info("Terminal tool window initialized in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) + " ms, sessions: " + toolWindow.getContentManager().getContentCount());
 	}
 }
@@ -4,21 +4,40 @@ import consulo.annotation.component.ComponentScope;
 import consulo.annotation.component.ServiceAPI;
 import consulo.annotation.component.ServiceImpl;
 import consulo.application.AllIcons;
+import consulo.application.util.concurrent.AppExecutorUtil;
+import consulo.component.persist.PersistentStateComponent;
+import consulo.component.persist.State;
+import consulo.component.persist.Storage;
+import consulo.component.persist.StoragePathMacros;
 import consulo.component.util.text.UniqueNameGenerator;
 import consulo.disposer.Disposable;
-import consulo.execution.terminal.TerminalSession;
-import consulo.execution.terminal.TerminalSessionFactory;
+import consulo.disposer.Disposer;
 import consulo.execution.ui.terminal.TerminalConsole;
 import consulo.execution.ui.terminal.TerminalConsoleFactory;
+import consulo.localize.LocalizeValue;
+import consulo.logging.Logger;
 import consulo.module.content.ProjectRootManager;
 import consulo.project.Project;
+import consulo.project.ProjectManager;
 import consulo.project.ui.wm.ToolWindowManager;
+import consulo.ui.Button;
+import consulo.ui.Component;
+import consulo.ui.Label;
+import consulo.ui.UIAccess;
 import consulo.ui.annotation.RequiredUIAccess;
+import consulo.ui.ex.action.ActionManager;
+import consulo.ui.ex.action.AnAction;
+import consulo.ui.ex.action.AnActionEvent;
 import consulo.ui.ex.action.DumbAwareAction;
 import consulo.ui.ex.awt.Messages;
 import consulo.ui.ex.content.Content;
 import consulo.ui.ex.content.ContentManager;
+import consulo.ui.ex.content.event.ContentManagerEvent;
+import consulo.ui.ex.content.event.ContentManagerListener;
 import consulo.ui.ex.toolWindow.ToolWindow;
+import consulo.ui.image.Image;
+import consulo.ui.layout.VerticalLayout;
+import consulo.ui.layout.WrappedLayout;
 import consulo.util.lang.StringUtil;
 import consulo.virtualFileSystem.VirtualFile;
 import jakarta.inject.Inject;
@@ -26,20 +45,58 @@ import jakarta.inject.Singleton;
 
 import jakarta.annotation.Nonnull;
 import jakarta.annotation.Nullable;
+import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 /**
  * @author traff
  */
 @Singleton
+@State(name = "TerminalView", storages = @Storage(file = StoragePathMacros.WORKSPACE_FILE))
 @ServiceAPI(ComponentScope.PROJECT)
 @ServiceImpl
-public class TerminalView
+public class TerminalView implements PersistentStateComponent<TerminalView.State>
 {
+	public static class TabState
+	{
+		public String myName;
+		public String myWorkDirectory;
+	}
+
+	public static class State
+	{
+		public List<TabState> myTabs = new ArrayList<>();
+	}
+
+	private static final Logger LOG = Logger.getInstance(TerminalView.class);
+
+	private static final double HEAVY_CPU_PERCENT = 50;
+	private static final long HEAVY_RSS_BYTES = 1024L * 1024 * 1024;
+	// samples are taken every 2 seconds while processes are busy
+	private static final int FLOOD_SAMPLES = 2;
+
+	private static final String REFRESH_SHELL_ENVIRONMENT_ACTION_ID = "Terminal.RefreshShellEnvironment";
+
 	private final Project myProject;
 
+	// modified only from UI thread, read by state saving
+	private final Map<Content, TerminalTab> myTabs = new ConcurrentHashMap<>();
+
+	private ToolWindow myToolWindow;
+	private State myRestoredState = new State();
+
 	private boolean myDoAddNewSessionOnInit;
 
 	@Inject
@@ -53,30 +110,201 @@ public class TerminalView
 		return project.getInstance(TerminalView.class);
 	}
 
+	@Override
+	public State getState()
+	{
+		ToolWindow toolWindow = myToolWindow;
+		if(toolWindow == null)
+		{
+			// terminal was not opened, keep tabs from previous session
+			return myRestoredState;
+		}
+
+		State state = new State();
+		for(Content content : toolWindow.getContentManager().getContents())
+		{
+			TerminalTab tab = myTabs.get(content);
+			if(tab == null)
+			{
+				continue;
+			}
+
+			TabState tabState = new TabState();
+			tabState.myName = content.getDisplayName();
+			tabState.myWorkDirectory = tab.getCurrentDirectory();
+			state.myTabs.add(tabState);
+		}
+		return state;
+	}
+
+	@Override
+	public void loadState(State state)
+	{
+		myRestoredState = state;
+	}
+
 	@RequiredUIAccess
 	public void openTerminalIn(@Nullable VirtualFile fileToOpen)
 	{
-		String workDirectory = null;
-		VirtualFile parentDirectory = fileToOpen != null && !fileToOpen.isDirectory() ? fileToOpen.getParent() : fileToOpen;
-		if(parentDirectory != null)
+		openTerminalsIn(fileToOpen == null ? Collections.emptyList() : Collections.singletonList(fileToOpen));
+	}
+
+	/**
+	 * Opens tab for each distinct directory of given files, or reuses idle tab which is already there.
+	 * New sessions are started in background in parallel, see {@link TerminalOptionsProvider#getParallelSessionStarts()},
+	 * and each tab shows its console as soon as its session is ready
+	 */
+	@RequiredUIAccess
+	public void openTerminalsIn(@Nonnull List<VirtualFile> filesToOpen)
+	{
+		Set<String> workDirectories = new LinkedHashSet<>();
+		for(VirtualFile file : filesToOpen)
 		{
-			workDirectory = parentDirectory.getPath();
+			VirtualFile parentDirectory = !file.isDirectory() ? file.getParent() : file;
+			if(parentDirectory != null)
+			{
+				workDirectories.add(parentDirectory.getPath());
+			}
 		}
 
 		ToolWindow toolWindow = ToolWindowManager.getInstance(myProject).getToolWindow(TerminalToolWindowFactory.TOOL_WINDOW_ID);
 
 		myDoAddNewSessionOnInit = true;
 
-		addNewSession(toolWindow, workDirectory);
+		if(workDirectories.isEmpty())
+		{
+			addNewSession(toolWindow, null);
+			toolWindow.activate(null);
+			return;
+		}
+
+		boolean reuseIdleSession = TerminalOptionsProvider.getInstance().isReuseIdleSession();
+
+		Content contentToSelect = null;
+		boolean allReused = true;
+		for(String workDirectory : workDirectories)
+		{
+			Content content = reuseIdleSession ? findIdleContent(toolWindow, workDirectory) : null;
+			if(content == null)
+			{
+				content = addTab(toolWindow, null, workDirectory, true);
+				allReused = false;
+			}
+
+			if(contentToSelect == null)
+			{
+				contentToSelect = content;
+			}
+		}
+
+		if(allReused)
+		{
+			myDoAddNewSessionOnInit = false;
+		}
 
+		toolWindow.getContentManager().setSelectedContent(contentToSelect);
 		toolWindow.activate(null);
 	}
 
+	/**
+	 * @return tab, which shell is in given directory and has no running commands
+	 */
+	@Nullable
+	@RequiredUIAccess
+	private Content findIdleContent(@Nonnull ToolWindow toolWindow, @Nonnull String workDirectory)
+	{
+		Set<Long> parentPids = null;
+		for(Content content : toolWindow.getContentManager().getContents())
+		{
+			TerminalTab tab = myTabs.get(content);
+			if(tab == null || tab.getProcess() == null || !TerminalProcessUtil.isSamePath(tab.getCurrentDirectory(), workDirectory))
+			{
+				continue;
+			}
+
+			if(parentPids == null)
+			{
+				parentPids = TerminalProcessUtil.getParentPids();
+			}
+
+			if(tab.isIdle(parentPids))
+			{
+				return content;
+			}
+		}
+		return null;
+	}
+
+	@Nullable
+	private ProcessHandle getSelectedProcess(@Nonnull ToolWindow toolWindow)
+	{
+		Content selectedContent = toolWindow.getContentManager().getSelectedContent();
+		TerminalTab tab = selectedContent == null ? null : myTabs.get(selectedContent);
+		return tab == null ? null : tab.getProcess();
+	}
+
+	@RequiredUIAccess
 	public void initTerminal(final ToolWindow toolWindow)
 	{
+		myToolWindow = toolWindow;
+
 		toolWindow.setToHideOnEmptyContent(true);
 
-		toolWindow.setTabActions(DumbAwareAction.create("Add Terminal", AllIcons.General.Add, event -> addNewSession(toolWindow, null)));
+		DumbAwareAction addAction = DumbAwareAction.create("Add Terminal", AllIcons.General.Add, event -> addNewSession(toolWindow, null));
+		DumbAwareAction killAction = new DumbAwareAction("Kill Processes Started in Terminal", "Forcibly terminates all processes running in the shell of the tab", AllIcons.Actions.Suspend)
+		{
+			@Override
+			@RequiredUIAccess
+			public void update(@Nonnull AnActionEvent e)
+			{
+				ProcessHandle process = getSelectedProcess(toolWindow);
+				e.getPresentation().setEnabled(process != null && process.isAlive());
+			}
+
+			@Override
+			@RequiredUIAccess
+			public void actionPerformed(@Nonnull AnActionEvent e)
+			{
+				ProcessHandle process = getSelectedProcess(toolWindow);
+				if(process == null)
+				{
+					return;
+				}
+
+				// keep shell alive, kill only what is running in it
+				List<ProcessHandle> descendants = process.descendants().collect(Collectors.toList());
+				if(descendants.isEmpty())
+				{
+					Messages.showInfoMessage(myProject, "No processes are running in the terminal", "Kill Processes");
+					return;
+				}
+
+				String names = descendants.stream().map(handle -> handle.info().command().map(command -> new File(command).getName()).orElse(String.valueOf(handle.pid()))).distinct().limit(5).collect(Collectors.joining(", "));
+				String message = "Forcibly kill " + descendants.size() + (descendants.size() == 1 ? " process" : " processes") + " running in the terminal (" + names + ")? Unsaved work of these processes will be lost.";
+				if(Messages.showYesNoDialog(myProject, message, "Kill Processes", Messages.getWarningIcon()) == Messages.YES)
+				{
+					AppExecutorUtil.getAppExecutorService().execute(() -> descendants.forEach(ProcessHandle::destroyForcibly));
+				}
+			}
+		};
+		DumbAwareAction reopenAction = DumbAwareAction.create("Reopen Terminal Tab in Another Project", AllIcons.Actions.Forward, event ->
+		{
+			Content selectedContent = toolWindow.getContentManager().getSelectedContent();
+			if(selectedContent != null && myTabs.containsKey(selectedContent))
+			{
+				reopenInProject(selectedContent);
+			}
+		});
+		// hides itself unless fast start is enabled
+		AnAction refreshEnvironmentAction = ActionManager.getInstance().getAction(REFRESH_SHELL_ENVIRONMENT_ACTION_ID);
+		if(refreshEnvironmentAction != null)
+		{
+			toolWindow.setTabActions(addAction, killAction, reopenAction, refreshEnvironmentAction);
+		}
+		else
+		{
+			toolWindow.setTabActions(addAction, killAction, reopenAction);
+		}
 
 		toolWindow.setTabDoubleClickActions(DumbAwareAction.create("Rename tab", null, event ->
 		{
@@ -93,12 +321,30 @@ public class TerminalView
 
 			if(!StringUtil.isEmptyOrSpaces(newName) && !displayName.equals(newName))
 			{
-				selectedContent.setTabName(displayName);
-				selectedContent.setDisplayName(displayName);
+				selectedContent.setTabName(newName);
+				selectedContent.setDisplayName(newName);
 			}
 		}));
 
-		if(!myDoAddNewSessionOnInit)
+		toolWindow.getContentManager().addContentManagerListener(new ContentManagerListener()
+		{
+			@Override
+			public void selectionChanged(ContentManagerEvent event)
+			{
+				if(event.getOperation() == ContentManagerEvent.ContentOperation.add && toolWindow.isVisible())
+				{
+					startIfNeeded(event.getContent());
+				}
+			}
+		});
+
+		if(TerminalOptionsProvider.getInstance().isRestoreTabs())
+		{
+			restoreTabs(toolWindow);
+		}
+		myRestoredState = new State();
+
+		if(!myDoAddNewSessionOnInit && toolWindow.getContentManager().getContentCount() == 0 && (!TerminalOptionsProvider.getInstance().isStartSessionOnShow() || toolWindow.isVisible()))
 		{
 			addNewSession(toolWindow, null);
 		}
@@ -106,39 +352,518 @@ public class TerminalView
 		myDoAddNewSessionOnInit = false;
 	}
 
-	public void addNewSession(@Nonnull ToolWindow toolWindow, @Nullable String workDirectory)
+	/**
+	 * Called when terminal tool window becomes visible
+	 */
+	@RequiredUIAccess
+	public void toolWindowShown(@Nonnull ToolWindow toolWindow)
 	{
 		ContentManager contentManager = toolWindow.getContentManager();
+		if(contentManager.getContentCount() == 0)
+		{
+			addNewSession(toolWindow, null);
+			return;
+		}
 
-		Disposable parentDisposable = Disposable.newDisposable("terminal view");
+		Content selectedContent = contentManager.getSelectedContent();
+		if(selectedContent != null)
+		{
+			startIfNeeded(selectedContent);
+		}
+	}
 
-		TerminalSessionFactory sessionFactory = myProject.getApplication().getInstance(TerminalSessionFactory.class);
+	/**
+	 * Adds tabs from previous IDE session as placeholders, their shells are started when tab is selected.
+	 * Directories are not checked here, session falls back to project folder if its directory doesn't exist anymore, see {@link TerminalSessionStarter}
+	 */
+	@RequiredUIAccess
+	private void restoreTabs(@Nonnull ToolWindow toolWindow)
+	{
+		for(TabState tabState : myRestoredState.myTabs)
+		{
+			String workDirectory = StringUtil.isEmptyOrSpaces(tabState.myWorkDirectory) ? currentProjectFolder(myProject) : tabState.myWorkDirectory;
+			addTab(toolWindow, tabState.myName, workDirectory, false);
+		}
+	}
 
+	@RequiredUIAccess
+	public void addNewSession(@Nonnull ToolWindow toolWindow, @Nullable String workDirectory)
+	{
 		if(workDirectory == null)
 		{
 			workDirectory = currentProjectFolder(myProject);
 		}
 
-		TerminalSession session = sessionFactory.createLocal("Local", workDirectory, () -> TerminalOptionsProvider.getInstance().getShellPathOrDefault());
+		addTab(toolWindow, null, workDirectory, true);
+	}
+
+	@Nonnull
+	@RequiredUIAccess
+	private Content addTab(@Nonnull ToolWindow toolWindow, @Nullable String tabName, @Nonnull String workDirectory, boolean start)
+	{
+		ContentManager contentManager = toolWindow.getContentManager();
+
+		Disposable parentDisposable = Disposable.newDisposable("terminal view");
+		WrappedLayout sessionLayout = WrappedLayout.create(Label.create(LocalizeValue.localizeTODO("Terminal session will be started when tab is selected")));
+
+		TerminalTab tab = new TerminalTab(workDirectory, sessionLayout, parentDisposable);
+		Disposer.register(parentDisposable, () ->
+		{
+			TerminalProcessSampler.getInstance().unregister(tab);
+			TerminalCommandIndex commandIndex = tab.getCommandIndex();
+			if(commandIndex != null)
+			{
+				commandIndex.delete();
+			}
+		});
+
+		Content content = createContent(contentManager, tabName, tab);
 
-		TerminalConsoleFactory terminalConsoleFactory = myProject.getInstance(TerminalConsoleFactory.class);
+		if(start)
+		{
+			startSession(content, tab);
+		}
 
-		TerminalConsole terminalConsole = terminalConsoleFactory.create(session, TerminalOptionsProvider.getInstance(), parentDisposable);
+		contentManager.addContent(content);
+		if(start)
+		{
+			contentManager.setSelectedContent(content);
+		}
+		return content;
+	}
 
+	@Nonnull
+	@RequiredUIAccess
+	private Content createContent(@Nonnull ContentManager contentManager, @Nullable String tabName, @Nonnull TerminalTab tab)
+	{
 		List<String> names = Arrays.stream(contentManager.getContents()).map(Content::getDisplayName).collect(Collectors.toList());
-		String uniqueName = UniqueNameGenerator.generateUniqueName(terminalConsole.getSessionName(), "", "", " ", "", name -> !names.contains(name));
+		String baseName = StringUtil.isEmptyOrSpaces(tabName) ? TerminalOptionsProvider.getInstance().getTabNameOrDefault() : tabName;
+		String uniqueName = UniqueNameGenerator.generateUniqueName(baseName, "", "", " ", "", name -> !names.contains(name));
 
-		Content content = contentManager.getFactory().createUIContent(terminalConsole.getUIComponent(), uniqueName, false);
+		Content content = contentManager.getFactory().createUIContent(tab.getLayout(), uniqueName, false);
 		content.setCloseable(true);
 		content.setTabName(uniqueName);
-		content.setDisposer(parentDisposable);
+		content.setDescription(tab.getWorkDirectory());
+		content.setDisposer(tab.getDisposable());
+
+		// callbacks reference this view, so they are dropped when tab moves to another project
+		Disposable viewDisposable = Disposable.newDisposable("terminal tab view");
+		Disposer.register(tab.getDisposable(), viewDisposable);
+		tab.setViewDisposable(viewDisposable);
+
+		myTabs.put(content, tab);
+		Disposer.register(viewDisposable, () -> myTabs.remove(content));
+		return content;
+	}
+
+	/**
+	 * Removes tab from tool window and ends its session, see {@link TerminalSessionHost#reopenTab}
+	 *
+	 * @return detached tab, or null if its session is starting right now
+	 */
+	@Nullable
+	@RequiredUIAccess
+	TerminalTab detachTab(@Nonnull Content content)
+	{
+		TerminalTab tab = myTabs.get(content);
+		if(tab == null || tab.isStarted() && tab.getConsoleComponent() == null)
+		{
+			return null;
+		}
+
+		Disposable sessionDisposable = tab.getSessionDisposable();
+		if(sessionDisposable != null)
+		{
+			endSession(tab, sessionDisposable);
+			tab.getLayout().set(Label.create(LocalizeValue.localizeTODO("Terminal session will be started when tab is selected")));
+		}
+
+		Disposable viewDisposable = tab.getViewDisposable();
+		if(viewDisposable != null)
+		{
+			Disposer.dispose(viewDisposable);
+		}
+		content.getManager().removeContent(content, false);
+		return tab;
+	}
 
+	/**
+	 * Adds tab detached from another project, selects it and starts its session
+	 */
+	@RequiredUIAccess
+	void attachTab(@Nonnull String tabName, @Nonnull TerminalTab tab)
+	{
+		ToolWindow toolWindow = ToolWindowManager.getInstance(myProject).getToolWindow(TerminalToolWindowFactory.TOOL_WINDOW_ID);
+
+		myDoAddNewSessionOnInit = true;
+
+		ContentManager contentManager = toolWindow.getContentManager();
+		Content content = createContent(contentManager, tabName, tab);
 		contentManager.addContent(content);
 		contentManager.setSelectedContent(content);
+		startIfNeeded(content);
+
+		toolWindow.activate(null);
+	}
+
+	@RequiredUIAccess
+	private void reopenInProject(@Nonnull Content content)
+	{
+		List<Project> projects = new ArrayList<>();
+		for(Project project : ProjectManager.getInstance().getOpenProjects())
+		{
+			if(project != myProject && !project.isDisposed())
+			{
+				projects.add(project);
+			}
+		}
+
+		if(projects.isEmpty())
+		{
+			Messages.showInfoMessage(myProject, "There are no other open projects", "Reopen Terminal Tab");
+			return;
+		}
+
+		String[] names = projects.stream().map(Project::getName).toArray(String[]::new);
+		int index = Messages.showChooseDialog(myProject, "Reopen terminal tab '" + content.getDisplayName() + "' in project:\n" +
+				"Its shell is ended here and a new one is started there in the current directory.", "Reopen Terminal Tab", null, names, names[0]);
+		if(index < 0)
+		{
+			return;
+		}
+
+		TerminalTab tab = myTabs.get(content);
+		ProcessHandle process = tab == null ? null : tab.getProcess();
+		if(process != null && process.children().findAny().isPresent() &&
+				Messages.showYesNoDialog(myProject, "Commands running in terminal tab '" + content.getDisplayName() + "' will be terminated. Reopen it anyway?", "Reopen Terminal Tab", Messages.getWarningIcon()) != Messages.YES)
+		{
+			return;
+		}
+
+		TerminalSessionHost.getInstance().reopenTab(myProject, content, projects.get(index));
+	}
+
+	/**
+	 * @return metrics of all terminal tabs of project. May be called from any thread
+	 */
+	@Nonnull
+	public List<TerminalSessionMetrics> getSessionMetrics()
+	{
+		List<TerminalSessionMetrics> metrics = new ArrayList<>();
+		for(Map.Entry<Content, TerminalTab> entry : myTabs.entrySet())
+		{
+			metrics.add(entry.getValue().getMetrics(entry.getKey().getDisplayName()));
+		}
+		return metrics;
+	}
+
+	@RequiredUIAccess
+	private void startIfNeeded(@Nonnull Content content)
+	{
+		TerminalTab tab = myTabs.get(content);
+		if(tab != null && !tab.isStarted())
+		{
+			startSession(content, tab);
+		}
+	}
+
+	/**
+	 * Takes started session from pool, or spawns shell process in background, and shows its console inside tab when it's ready
+	 */
+	@RequiredUIAccess
+	private void startSession(@Nonnull Content content, @Nonnull TerminalTab tab)
+	{
+		tab.setStarted();
+
+		String workDirectory = tab.getWorkDirectory();
+		String shellPath = tab.getShellPath();
+		WrappedLayout sessionLayout = tab.getLayout();
+
+		// session is disposed with tab, or earlier when tab is hibernated
+		Disposable sessionDisposable = Disposable.newDisposable("terminal session");
+		Disposer.register(tab.getDisposable(), sessionDisposable);
+		tab.setSessionDisposable(sessionDisposable);
+
+		TerminalSessionPool sessionPool = TerminalSessionPool.getInstance(myProject);
+
+		TerminalSessionPool.PooledSession pooledSession = sessionPool.poll(workDirectory, shellPath);
+		if(pooledSession != null)
+		{
+			sessionPool.refill();
+
+			Disposer.register(sessionDisposable, pooledSession.getDisposable());
+			tab.setConsoleComponent(pooledSession.getConsole().getUIComponent());
+			sessionLayout.set(pooledSession.getConsole().getUIComponent());
+
+			sessionStarted(content, tab, sessionDisposable, pooledSession.getProcess(), 0, true);
+			return;
+		}
+
+		Disposable slot = TerminalSessionHost.getInstance().acquire(sessionDisposable);
+		if(slot == null)
+		{
+			// pre-started sessions give way to sessions requested by user
+			sessionPool.clear();
+			slot = TerminalSessionHost.getInstance().acquire(sessionDisposable);
+		}
+		if(slot == null)
+		{
+			Disposer.dispose(sessionDisposable);
+			sessionLayout.set(createSessionLimitBanner(content, tab));
+			return;
+		}
+		sessionPool.refill();
+
+		sessionLayout.set(Label.create(LocalizeValue.localizeTODO("Starting terminal session\u2026")));
+
+		UIAccess uiAccess = UIAccess.current();
+		long startTime = System.nanoTime();
+
+		AtomicBoolean closed = new AtomicBoolean();
+		Disposer.register(sessionDisposable, () -> closed.set(true));
+
+		TerminalSessionStarter.startAsync(myProject, workDirectory, shellPath).whenComplete((startedSession, error) -> uiAccess.give(() ->
+		{
+			if(error != null)
+			{
+				Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+				LOG.warn("Can't start terminal session in " + workDirectory, cause);
+				Disposer.dispose(sessionDisposable);
+
+				sessionLayout.set(Label.create(LocalizeValue.localizeTODO("Can't start terminal session: " + StringUtil.notNullize(cause.getMessage(), cause.getClass().getSimpleName()))));
+				return;
+			}
+
+			if(closed.get())
+			{
+				// tab was closed while shell was starting - create console just to terminate session
+				Disposable disposable = Disposable.newDisposable("closed terminal session");
+				myProject.getInstance(TerminalConsoleFactory.class).create(startedSession.getSession(), TerminalOptionsProvider.getInstance(), disposable);
+				Disposer.dispose(disposable);
+				return;
+			}
+
+			TerminalConsoleFactory terminalConsoleFactory = myProject.getInstance(TerminalConsoleFactory.class);
+
+			TerminalConsole terminalConsole = terminalConsoleFactory.create(startedSession.getSession(), TerminalOptionsProvider.getInstance(), sessionDisposable);
+
+			tab.setConsoleComponent(terminalConsole.getUIComponent());
+			sessionLayout.set(terminalConsole.getUIComponent());
+
+			long spawnLatency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+			sessionStarted(content, tab, sessionDisposable, startedSession.getProcess(), spawnLatency, false);
+
+			LOG.debug("Terminal session started in " + spawnLatency + " ms");
+		}));
+	}
+
+	@RequiredUIAccess
+	private void sessionStarted(@Nonnull Content content,
+								@Nonnull TerminalTab tab,
+								@Nonnull Disposable sessionDisposable,
+								@Nonnull CompletableFuture<ProcessHandle> process,
+								long spawnLatencyMillis,
+								boolean fromPool)
+	{
+		tab.sessionStarted(spawnLatencyMillis, fromPool);
+		updatePresentation(content, tab);
+
+		UIAccess uiAccess = UIAccess.current();
+		process.thenAccept(handle -> uiAccess.give(() -> processFound(content, tab, sessionDisposable, handle)));
+	}
+
+	/**
+	 * Starts sampling of shell process, when shell has reported it
+	 */
+	@RequiredUIAccess
+	private void processFound(@Nonnull Content content, @Nonnull TerminalTab tab, @Nonnull Disposable sessionDisposable, @Nullable ProcessHandle process)
+	{
+		// session may be ended meanwhile, e.g. tab is closed, hibernated or moved
+		if(process == null || tab.getSessionDisposable() != sessionDisposable || Disposer.isDisposed(sessionDisposable))
+		{
+			return;
+		}
+
+		tab.setProcess(process);
+		updatePresentation(content, tab);
+
+		UIAccess uiAccess = UIAccess.current();
+		TerminalProcessSampler.getInstance().register(tab, () -> uiAccess.give(() -> sampled(content, tab)));
+	}
+
+	/**
+	 * Updates tab tooltip with session metrics, and marks tabs which processes use a lot of CPU or memory
+	 */
+	@RequiredUIAccess
+	private void updatePresentation(@Nonnull Content content, @Nonnull TerminalTab tab)
+	{
+		if(!myTabs.containsKey(content))
+		{
+			return;
+		}
+
+		content.setDescription(tab.getMetrics(content.getDisplayName()).getDescription());
+
+		boolean heavy = tab.getCpuPercent() >= HEAVY_CPU_PERCENT || tab.getRssBytes() >= HEAVY_RSS_BYTES;
+		Image icon = heavy ? AllIcons.General.Warning : null;
+		if(content.getIcon() != icon)
+		{
+			content.setIcon(icon);
+		}
+
+		updateFloodState(tab);
+	}
+
+	@RequiredUIAccess
+	private void sampled(@Nonnull Content content, @Nonnull TerminalTab tab)
+	{
+		updatePresentation(content, tab);
+		hibernateIfIdle(content, tab);
+	}
+
+	/**
+	 * Terminates session of tab, which is not selected and was idle longer than {@link TerminalOptionsProvider#getHibernateIdleMinutes()}.
+	 * Tab keeps shell directory and starts new session there when it's selected again
+	 */
+	@RequiredUIAccess
+	private void hibernateIfIdle(@Nonnull Content content, @Nonnull TerminalTab tab)
+	{
+		int idleMinutes = TerminalOptionsProvider.getInstance().getHibernateIdleMinutes();
+		Disposable sessionDisposable = tab.getSessionDisposable();
+		if(idleMinutes <= 0 || sessionDisposable == null || tab.getConsoleComponent() == null || tab.getIdleMillis() < TimeUnit.MINUTES.toMillis(idleMinutes))
+		{
+			return;
+		}
+
+		ContentManager contentManager = content.getManager();
+		if(!myTabs.containsKey(content) || contentManager == null || contentManager.getSelectedContent() == content)
+		{
+			return;
+		}
+
+		ProcessHandle process = tab.getProcess();
+		if(process != null && process.children().findAny().isPresent())
+		{
+			return;
+		}
+
+		String currentDirectory = endSession(tab, sessionDisposable);
+
+		tab.getLayout().set(Label.create(LocalizeValue.localizeTODO("Terminal session was ended after being idle for " + idleMinutes + " min. " +
+				"A new session will be started in " + currentDirectory + " when tab is selected")));
+		content.setDescription(currentDirectory);
+		content.setIcon(null);
+
+		LOG.debug("Terminal session in " + currentDirectory + " hibernated");
+	}
+
+	/**
+	 * Terminates session of tab, which then becomes placeholder starting new session in current directory of shell
+	 *
+	 * @return directory, in which new session will be started
+	 */
+	@Nonnull
+	@RequiredUIAccess
+	private static String endSession(@Nonnull TerminalTab tab, @Nonnull Disposable sessionDisposable)
+	{
+		String currentDirectory = tab.getCurrentDirectory();
+
+		TerminalProcessSampler.getInstance().unregister(tab);
+		TerminalCommandIndex commandIndex = tab.getCommandIndex();
+		if(commandIndex != null)
+		{
+			commandIndex.delete();
+		}
+		Disposer.dispose(sessionDisposable);
+		tab.sessionHibernated(currentDirectory);
+		return currentDirectory;
+	}
+
+	/**
+	 * Pauses rendering of tab while its processes write faster than {@link TerminalOptionsProvider#getFloodThreshold()}.
+	 * The rate is an estimate, see {@link TerminalTab#getOutputBytesPerSecond()}.
+	 * Console still receives all output, only its component is replaced by a banner, and is shown back when output slows down
+	 */
+	@RequiredUIAccess
+	private void updateFloodState(@Nonnull TerminalTab tab)
+	{
+		Component consoleComponent = tab.getConsoleComponent();
+		if(consoleComponent == null)
+		{
+			return;
+		}
+
+		tab.countFloodOutput();
+
+		long threshold = TerminalOptionsProvider.getInstance().getFloodThreshold() * 1024L;
+		long outputBytesPerSecond = tab.getOutputBytesPerSecond();
+
+		if(!tab.isFlooding())
+		{
+			if(tab.countFloodSample(threshold > 0 && outputBytesPerSecond > threshold) >= FLOOD_SAMPLES)
+			{
+				tab.setFlooding(true);
+				tab.getLayout().set(createFloodBanner(tab));
+			}
+			return;
+		}
+
+		if(threshold <= 0 || outputBytesPerSecond < threshold / 2)
+		{
+			tab.countFloodSample(false);
+			tab.setFlooding(false);
+			tab.getLayout().set(consoleComponent);
+		}
+		else if(!tab.isFloodOverridden())
+		{
+			tab.getLayout().set(createFloodBanner(tab));
+		}
+	}
+
+	@Nonnull
+	@RequiredUIAccess
+	private Component createSessionLimitBanner(@Nonnull Content content, @Nonnull TerminalTab tab)
+	{
+		VerticalLayout layout = VerticalLayout.create();
+		layout.add(Label.create(LocalizeValue.localizeTODO("Limit of " + TerminalOptionsProvider.getInstance().getMaxSessions() + " terminal sessions in all projects is reached. " +
+				"Close other terminal tabs, or raise the limit in terminal settings.")));
+
+		Button startButton = Button.create(LocalizeValue.localizeTODO("Start Session"));
+		startButton.addClickListener(event ->
+		{
+			if(myTabs.get(content) == tab)
+			{
+				startSession(content, tab);
+			}
+		});
+		layout.add(startButton);
+		return layout;
+	}
+
+	@Nonnull
+	@RequiredUIAccess
+	private static Component createFloodBanner(@Nonnull TerminalTab tab)
+	{
+		VerticalLayout layout = VerticalLayout.create();
+		layout.add(Label.create(LocalizeValue.localizeTODO("Output flood detected: about " + StringUtil.formatFileSize(tab.getOutputBytesPerSecond()) + "/s written by terminal processes. " +
+				"Rendering is paused until output slows down, up to " + StringUtil.formatFileSize(tab.getFloodSkippedBytes()) + " not shown so far.")));
+
+		Button showButton = Button.create(LocalizeValue.localizeTODO("Show Output"));
+		showButton.addClickListener(event ->
+		{
+			Component consoleComponent = tab.getConsoleComponent();
+			if(consoleComponent != null)
+			{
+				tab.setFloodOverridden();
+				tab.getLayout().set(consoleComponent);
+			}
+		});
+		layout.add(showButton);
+		return layout;
 	}
 
 	@Nonnull
-	private static String currentProjectFolder(Project project)
+	static String currentProjectFolder(Project project)
 	{
 		final ProjectRootManager projectRootManager = ProjectRootManager.getInstance(project);
 
@@ -0,0 +1,41 @@
+package org.jetbrains.plugins.terminal.impl.action;
+
+import consulo.annotation.component.ActionImpl;
+import consulo.application.AllIcons;
+import consulo.ui.annotation.RequiredUIAccess;
+import consulo.ui.ex.action.AnActionEvent;
+import consulo.ui.ex.action.DumbAwareAction;
+import consulo.ui.image.Image;
+import org.jetbrains.plugins.terminal.impl.TerminalOptionsProvider;
+import org.jetbrains.plugins.terminal.impl.TerminalShellEnvironment;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+
+/**
+ * Captures environment of login shell again, for sessions started in fast start mode. Shown in tab actions of Terminal tool window.
+ */
+@ActionImpl(id = "Terminal.RefreshShellEnvironment")
+public class RefreshShellEnvironmentAction extends DumbAwareAction
+{
+	@RequiredUIAccess
+	@Override
+	public void update(@Nonnull AnActionEvent e)
+	{
+		e.getPresentation().setEnabledAndVisible(TerminalOptionsProvider.getInstance().isFastStart());
+	}
+
+	@Nullable
+	@Override
+	protected Image getTemplateIcon()
+	{
+		return AllIcons.Actions.Refresh;
+	}
+
+	@RequiredUIAccess
+	@Override
+	public void actionPerformed(@Nonnull AnActionEvent e)
+	{
+		TerminalShellEnvironment.getInstance().refresh();
+	}
+}
@@ -20,8 +20,13 @@ import org.jetbrains.plugins.terminal.impl.TerminalView;
 import jakarta.annotation.Nonnull;
 import jakarta.annotation.Nullable;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 /**
- * An action that activates the terminal window for file, selected by user.
+ * An action that activates the terminal window for files, selected by user. Several selected files are opened
+ * in tab per distinct directory.
  */
 @ActionImpl(id = "Terminal.OpenInTerminal", parents = @ActionParentRef(@ActionRef(id = "RevealGroup")))
 public class RevealFileInTerminalAction extends DumbAwareAction
@@ -44,7 +49,7 @@ public class RevealFileInTerminalAction extends DumbAwareAction
 			presentation.setText(TerminalLocalize.actionTerminalOpeninterminalText());
 		}
 
-		presentation.setEnabledAndVisible(project != null && getSelectedFile(e) != null &&
+		presentation.setEnabledAndVisible(project != null && !getSelectedFiles(e).isEmpty() &&
 				(!ActionPlaces.isPopupPlace(place) || editor == null || !editor.getSelectionModel().hasSelection()));
 	}
 
@@ -55,10 +60,26 @@ public class RevealFileInTerminalAction extends DumbAwareAction
 		return TerminalIconGroup.openterminal_13x13();
 	}
 
-	@Nullable
-	private static VirtualFile getSelectedFile(@Nonnull AnActionEvent e)
+	@Nonnull
+	private static List<VirtualFile> getSelectedFiles(@Nonnull AnActionEvent e)
 	{
-		return findLocalFile(e.getData(CommonDataKeys.VIRTUAL_FILE));
+		VirtualFile[] files = e.getData(CommonDataKeys.VIRTUAL_FILE_ARRAY);
+		if(files == null || files.length == 0)
+		{
+			VirtualFile file = findLocalFile(e.getData(CommonDataKeys.VIRTUAL_FILE));
+			return file == null ? Collections.emptyList() : Collections.singletonList(file);
+		}
+
+		List<VirtualFile> localFiles = new ArrayList<>(files.length);
+		for(VirtualFile file : files)
+		{
+			VirtualFile localFile = findLocalFile(file);
+			if(localFile != null)
+			{
+				localFiles.add(localFile);
+			}
+		}
+		return localFiles;
 	}
 
 	@RequiredUIAccess
@@ -66,12 +87,12 @@ public class RevealFileInTerminalAction extends DumbAwareAction
 	public void actionPerformed(@Nonnull AnActionEvent e)
 	{
 		Project project = e.getData(Project.KEY);
-		VirtualFile selectedFile = getSelectedFile(e);
-		if(project == null || selectedFile == null)
+		List<VirtualFile> selectedFiles = getSelectedFiles(e);
+		if(project == null || selectedFiles.isEmpty())
 		{
 			return;
 		}
-		TerminalView.getInstance(project).openTerminalIn(selectedFile);
+		TerminalView.getInstance(project).openTerminalsIn(selectedFiles);
 	}
 
 	@Nullable
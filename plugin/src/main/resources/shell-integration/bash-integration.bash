@@ -0,0 +1,52 @@
+# Shell integration of Consulo terminal, used as --rcfile of bash.
+# Marks prompts and commands with OSC 133 sequences and reports them to $TERMINAL_STATUS_FILE.
+
+if [ -n "$TERMINAL_LOGIN_SHELL" ]; then
+  unset TERMINAL_LOGIN_SHELL
+  [ -r /etc/profile ] && . /etc/profile
+  if [ -r ~/.bash_profile ]; then
+    . ~/.bash_profile
+  elif [ -r ~/.bash_login ]; then
+    . ~/.bash_login
+  elif [ -r ~/.profile ]; then
+    . ~/.profile
+  fi
+else
+  [ -r /etc/bash.bashrc ] && . /etc/bash.bashrc
+  [ -r ~/.bashrc ] && . ~/.bashrc
+fi
+
+__terminal_report() {
+  [ -n "$TERMINAL_STATUS_FILE" ] && builtin printf '%s\n' "$1" >> "$TERMINAL_STATUS_FILE"
+}
+
+__terminal_precmd() {
+  local ret=$?
+  builtin printf '\033]133;D;%s\007\033]133;A\007' "$ret"
+  __terminal_report "P $ret"
+  # remembered to detect commands which are not added to history, e.g. with HISTCONTROL=ignorespace
+  __terminal_last_history=$(HISTTIMEFORMAT= builtin history 1)
+  return $ret
+}
+
+__terminal_preexec() {
+  local command
+  command=$(HISTTIMEFORMAT= builtin history 1)
+  if [ "$command" = "$__terminal_last_history" ]; then
+    command=
+  else
+    command="${command#*[0-9]  }"
+  fi
+  builtin printf '\033]133;C\007'
+  __terminal_report "C ${command//$'\n'/ }"
+}
+
+if [[ "$PROMPT_COMMAND" != *__terminal_precmd* ]]; then
+  PROMPT_COMMAND="__terminal_precmd${PROMPT_COMMAND:+; $PROMPT_COMMAND}"
+fi
+PS1="$PS1\[\033]133;B\007\]"
+# PS0 is expanded after command is read and before it is executed, it's available since bash 4.4.
+# Older bash reports only prompts, so running commands are detected by child processes of the shell
+if (( BASH_VERSINFO[0] > 4 || (BASH_VERSINFO[0] == 4 && BASH_VERSINFO[1] >= 4) )); then
+  PS0='$(__terminal_preexec)'"$PS0"
+fi
@@ -0,0 +1,22 @@
+# Shell integration of Consulo terminal, sourced by --init-command of fish.
+# Marks prompts and commands with OSC 133 sequences and reports them to $TERMINAL_STATUS_FILE.
+
+set -g __terminal_status 0
+
+function __terminal_report
+    set -q TERMINAL_STATUS_FILE; and echo $argv[1] >>$TERMINAL_STATUS_FILE
+end
+
+function __terminal_postexec --on-event fish_postexec
+    set -g __terminal_status $status
+end
+
+function __terminal_prompt --on-event fish_prompt
+    printf '\e]133;D;%s\a\e]133;A\a' $__terminal_status
+    __terminal_report "P $__terminal_status"
+end
+
+function __terminal_preexec --on-event fish_preexec
+    printf '\e]133;C\a'
+    __terminal_report "C "(string replace -a \n ' ' -- $argv[1])
+end